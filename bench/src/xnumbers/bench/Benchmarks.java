@@ -0,0 +1,64 @@
+package xnumbers.bench;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Runs the XNumbers benchmarks with allocation profiling, so that the
+ * normalized allocation rate (gc.alloc.rate.norm, in bytes per operation) is
+ * reported next to the time of each benchmark.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public final class Benchmarks {
+
+    /**
+     * Not instantiable.
+     */
+    private Benchmarks() {
+    }
+
+    /**
+     * Runs the benchmarks matching the specified patterns, all of them if
+     * none is specified.
+     *
+     * @param args regular expressions matching benchmark names, e.g.
+     * "GameBenchmark.move"
+     *
+     * @throws RunnerException if the benchmarks fail to run
+     */
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder builder = new OptionsBuilder();
+        if (args.length == 0) {
+            builder.include("xnumbers\\.bench\\..*");
+        }
+        for (String pattern : args) {
+            builder.include(pattern);
+        }
+        Options options = builder.addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
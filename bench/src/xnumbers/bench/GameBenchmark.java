@@ -0,0 +1,178 @@
+package xnumbers.bench;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import xnumbers.Board;
+import xnumbers.Game;
+import xnumbers.XNumbers;
+
+/**
+ * <p>Benchmarks of the headless game logic: shuffle generation, per-move
+ * cost, win detection, free cell lookup and board printing, over square
+ * boards of increasing size.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+
+    /**
+     * The board's width and height.
+     */
+    @Param({"3", "4", "8", "16", "32", "50"})
+    public int size;
+
+    /**
+     * The game, being played.
+     */
+    private Game game;
+
+    /**
+     * A tile adjacent to the free cell, moved back and forth by
+     * {@link #move()}.
+     */
+    private int tile;
+
+    /**
+     * The cell probed by the next {@link #checkFree()}.
+     */
+    private int cell;
+
+    /**
+     * The board data, as printed by {@link #printArray()}.
+     */
+    private int[] cells;
+
+    /**
+     * Starts a game on a shuffled board, and picks a tile whose moves keep
+     * the board unsolved.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        game = new Game(size, size);
+        game.setShuffleLogic(Game.ShuffleMethod.RANDOM);
+        while (true) {
+            // start a game...
+            game.process(Game.BUTTON_MAIN);
+            Board board = game.getBoard();
+            int[] neighbours = Board.neighbours(size, size);
+            int d = 0;
+            while (neighbours[board.getFree() * 4 + d] == -1) {
+                d++;
+            }
+            tile = board.get(neighbours[board.getFree() * 4 + d]);
+            if (board.getManhattan() > 1) {
+                break;
+            }
+            // ...or abort and reset, as the board is too close to solved...
+            game.process(Game.BUTTON_MAIN);
+            game.process(Game.BUTTON_MAIN);
+        }
+        cells = game.getBoard().toArray(null);
+        cell = 0;
+    }
+
+    /**
+     * Shuffles by a random walk from the solved arrangement.
+     *
+     * @return the game, so that the work is not eliminated
+     */
+    @Benchmark
+    public Game resetData() {
+        game.resetData(false);
+        return game;
+    }
+
+    /**
+     * Generates a uniformly random solvable arrangement.
+     *
+     * @return the game, so that the work is not eliminated
+     */
+    @Benchmark
+    public Game resetDataRandom() {
+        game.resetDataRandom(false);
+        return game;
+    }
+
+    /**
+     * Processes a click on a movable tile, moving it back and forth.
+     *
+     * @return the step count, so that the work is not eliminated
+     */
+    @Benchmark
+    public int move() {
+        game.process(tile);
+        return game.getSteps();
+    }
+
+    /**
+     * Checks whether the board is solved.
+     *
+     * @return the result, so that the work is not eliminated
+     */
+    @Benchmark
+    public boolean isSuccessful() {
+        return game.isSuccessful();
+    }
+
+    /**
+     * Locates the free cell with respect to each cell in turn.
+     *
+     * @return the result, so that the work is not eliminated
+     */
+    @Benchmark
+    public int checkFree() {
+        if (++cell == cells.length) {
+            cell = 0;
+        }
+        return game.checkFree(cell);
+    }
+
+    /**
+     * Prints the board data.
+     *
+     * @return the printed data, so that the work is not eliminated
+     */
+    @Benchmark
+    public String printArray() {
+        return XNumbers.printArray(cells, ",", true);
+    }
+}
@@ -0,0 +1,202 @@
+package xnumbers.bench;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3d.x3d.sai.MFInt32;
+import org.web3d.x3d.sai.SFInt32;
+import org.web3d.x3d.sai.SFTime;
+import org.web3d.x3d.sai.X3DField;
+import org.web3d.x3d.sai.X3DFieldEvent;
+
+import xnumbers.Board;
+import xnumbers.Game;
+import xnumbers.XNumbers;
+
+/**
+ * <p>Benchmarks of the X3D script against a stub execution context: scene
+ * construction and the full cost of a click, from the event to the commit of
+ * the resulting field writes, over square boards of increasing size, rendered
+ * either as separate tiles or as a single mesh.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SceneBenchmark {
+
+    /**
+     * The board's width and height.
+     */
+    @Param({"3", "4", "8", "16", "32", "50"})
+    public int size;
+
+    /**
+     * The render method.
+     */
+    @Param({"TILES", "MESH"})
+    public String renderLogic;
+
+    /**
+     * The script.
+     */
+    private XNumbers xnumbers;
+
+    /**
+     * The script's fields.
+     */
+    private Map<String, X3DField> fields;
+
+    /**
+     * The click field, always holding the main button's id.
+     */
+    private SFInt32 click;
+
+    /**
+     * The touchTime field of a stand-in TouchSensor on a tile adjacent to
+     * the free cell, moved back and forth by {@link #move()}.
+     */
+    private SFTime touchTime;
+
+    /**
+     * Creates and initializes the script and starts a game on a board where
+     * moving the chosen tile keeps the board unsolved.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        fields = Stubs.scriptFields(size, size, renderLogic);
+        click = Stubs.field(SFInt32.class, Integer.valueOf(Game.BUTTON_MAIN));
+        fields.put("click", click);
+        xnumbers = new XNumbers();
+        xnumbers.setBrowser(Stubs.browser());
+        xnumbers.setFields(null, fields);
+        xnumbers.initialize();
+
+        int[] cells = new int[size * size];
+        int tile;
+        while (true) {
+            // start a game...
+            click();
+            ((MFInt32) fields.get("boardState")).getValue(cells);
+            int free = 0;
+            while (cells[free] != -1) {
+                free++;
+            }
+            int[] neighbours = Board.neighbours(size, size);
+            int d = 0;
+            while (neighbours[free * 4 + d] == -1) {
+                d++;
+            }
+            tile = cells[neighbours[free * 4 + d]];
+            if (distance(cells) > 1) {
+                break;
+            }
+            // ...or abort and reset, as the board is too close to solved...
+            click();
+            click();
+        }
+        touchTime = Stubs.field(SFTime.class, null);
+        touchTime.setUserData(Integer.valueOf(tile));
+    }
+
+    /**
+     * Shuts the script down, releasing its shared nodes.
+     */
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        xnumbers.shutdown();
+    }
+
+    /**
+     * Builds the scene.
+     *
+     * @return the script, so that the work is not eliminated
+     */
+    @Benchmark
+    public XNumbers initModel() {
+        xnumbers.initModel();
+        xnumbers.eventsProcessed();
+        return xnumbers;
+    }
+
+    /**
+     * Delivers a click on the main button, cycling between starting,
+     * aborting and resetting a game. Starting and resetting rearrange the
+     * whole board.
+     *
+     * @return the script, so that the work is not eliminated
+     */
+    @Benchmark
+    public XNumbers click() {
+        xnumbers.readableFieldChanged(new X3DFieldEvent(click, 0, null));
+        xnumbers.eventsProcessed();
+        return xnumbers;
+    }
+
+    /**
+     * Delivers a TouchSensor event on a movable tile, moving it back and
+     * forth.
+     *
+     * @return the script, so that the work is not eliminated
+     */
+    @Benchmark
+    public XNumbers move() {
+        xnumbers.readableFieldChanged(new X3DFieldEvent(touchTime, 0, null));
+        return xnumbers;
+    }
+
+    /**
+     * Returns the Manhattan distance of the specified arrangement from the
+     * goal, ignoring the free cell.
+     *
+     * @param cells the tile index at each cell, -1 at the free cell
+     *
+     * @return the distance, as an int
+     */
+    private int distance(int[] cells) {
+        int distance = 0;
+        for (int i = 0; i != cells.length; i++) {
+            if (cells[i] != -1) {
+                distance += Math.abs(i / size - cells[i] / size) + Math.abs(i % size - cells[i] % size);
+            }
+        }
+        return distance;
+    }
+}
@@ -0,0 +1,332 @@
+package xnumbers.bench;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.web3d.x3d.sai.Browser;
+import org.web3d.x3d.sai.MFFloat;
+import org.web3d.x3d.sai.MFInt32;
+import org.web3d.x3d.sai.MFNode;
+import org.web3d.x3d.sai.MFString;
+import org.web3d.x3d.sai.MFVec2f;
+import org.web3d.x3d.sai.MFVec3f;
+import org.web3d.x3d.sai.SFBool;
+import org.web3d.x3d.sai.SFColor;
+import org.web3d.x3d.sai.SFFloat;
+import org.web3d.x3d.sai.SFImage;
+import org.web3d.x3d.sai.SFInt32;
+import org.web3d.x3d.sai.SFNode;
+import org.web3d.x3d.sai.SFString;
+import org.web3d.x3d.sai.SFTime;
+import org.web3d.x3d.sai.SFVec3f;
+import org.web3d.x3d.sai.X3DExecutionContext;
+import org.web3d.x3d.sai.X3DField;
+import org.web3d.x3d.sai.X3DNode;
+
+/**
+ * <p>Minimal in-memory stand-ins for the browser, execution context, nodes
+ * and fields, so that XNumbers can run without an X3D browser.</p>
+ *
+ * <p>Stubs are dynamic proxies. Fields keep the last value written to them
+ * and return it when read; a node creates each of its fields on first access,
+ * the field's interface being looked up by node type and field name. Nothing
+ * is rendered and events are never delivered, hence benchmarks measure the
+ * script's own work plus the cost of the SAI calls it makes.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public final class Stubs {
+
+    /**
+     * Field interfaces, by node type and field name or by field name alone.
+     */
+    private static final Map<String, Class<?>> FIELD_TYPES = new HashMap<String, Class<?>>();
+
+    static {
+        fieldType(SFVec3f.class, "translation", "scale", "center", "hitPoint_changed", "Box.size");
+        fieldType(SFNode.class, "material", "appearance", "geometry", "fontStyle", "metadata", "coord", "texture", "texCoord");
+        fieldType(MFNode.class, "children");
+        fieldType(MFString.class, "string", "justify", "url", "parameter", "value");
+        fieldType(SFString.class, "name", "description");
+        fieldType(SFBool.class, "enabled", "loop");
+        fieldType(SFTime.class, "cycleInterval", "cycleTime", "elapsedTime", "touchTime", "startTime");
+        fieldType(SFColor.class, "diffuseColor", "specularColor", "emissiveColor");
+        fieldType(SFFloat.class, "ambientIntensity", "shininess", "transparency", "FontStyle.size");
+        fieldType(MFVec3f.class, "point", "keyValue");
+        fieldType(MFFloat.class, "key");
+        fieldType(MFVec2f.class, "TextureCoordinate.point");
+        fieldType(SFImage.class, "image");
+        fieldType(MFInt32.class, "coordIndex");
+    }
+
+    /**
+     * The execution context shared by all stub browsers.
+     */
+    private static final X3DExecutionContext CONTEXT = (X3DExecutionContext) Proxy.newProxyInstance(
+        Stubs.class.getClassLoader(),
+        new Class<?>[]{X3DExecutionContext.class},
+        new InvocationHandler() {
+            @Override public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("createNode")) {
+                    return node((String) args[0]);
+                }
+                return defaultValue(proxy, method, args);
+            }
+        });
+
+    /**
+     * Not instantiable.
+     */
+    private Stubs() {
+    }
+
+    /**
+     * Registers the interface of the specified fields.
+     *
+     * @param type the field interface
+     * @param names the field names, optionally qualified by node type
+     */
+    private static void fieldType(Class<?> type, String... names) {
+        for (String name : names) {
+            FIELD_TYPES.put(name, type);
+        }
+    }
+
+    /**
+     * Creates a stub browser. Console output is discarded.
+     *
+     * @return the browser, as a Browser
+     */
+    public static Browser browser() {
+        return (Browser) Proxy.newProxyInstance(
+            Stubs.class.getClassLoader(),
+            new Class<?>[]{Browser.class},
+            new InvocationHandler() {
+                @Override public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getExecutionContext")) {
+                        return CONTEXT;
+                    }
+                    return defaultValue(proxy, method, args);
+                }
+            });
+    }
+
+    /**
+     * Creates a stub node of the specified type.
+     *
+     * @param type the node type
+     *
+     * @return the node, as an X3DNode
+     */
+    public static X3DNode node(final String type) {
+        final Map<String, X3DField> fields = new HashMap<String, X3DField>();
+        return (X3DNode) Proxy.newProxyInstance(
+            Stubs.class.getClassLoader(),
+            new Class<?>[]{X3DNode.class},
+            new InvocationHandler() {
+                @Override public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getField")) {
+                        String name = (String) args[0];
+                        X3DField field = fields.get(name);
+                        if (field == null) {
+                            Class<?> fieldType = FIELD_TYPES.get(type + "." + name);
+                            if (fieldType == null) {
+                                fieldType = FIELD_TYPES.get(name);
+                            }
+                            if (fieldType == null) {
+                                throw new IllegalArgumentException("Unknown field " + type + "." + name);
+                            }
+                            field = (X3DField) field(fieldType, null);
+                            fields.put(name, field);
+                        }
+                        return field;
+                    }
+                    if (method.getName().equals("getNodeName")) {
+                        return type;
+                    }
+                    return defaultValue(proxy, method, args);
+                }
+            });
+    }
+
+    /**
+     * Creates a stub field holding the specified value.
+     *
+     * @param type the field interface
+     * @param value the initial value, boxed if primitive, null for the
+     * default
+     *
+     * @return the field
+     */
+    public static <T> T field(Class<T> type, Object value) {
+        final Object[] state = new Object[]{value, null};
+        return type.cast(Proxy.newProxyInstance(
+            Stubs.class.getClassLoader(),
+            new Class<?>[]{type},
+            new InvocationHandler() {
+                @Override public Object invoke(Object proxy, Method method, Object[] args) {
+                    String name = method.getName();
+                    if (name.equals("setValue")) {
+                        // single-valued setters take the value, multi-valued
+                        // ones the size followed by the values...
+                        state[0] = copy(args[args.length - 1]);
+                        return null;
+                    }
+                    if (name.equals("set1Value")) {
+                        int index = ((Integer) args[0]).intValue();
+                        if (args[1] instanceof float[]) {
+                            // a vector, stored flattened...
+                            float[] vector = (float[]) args[1];
+                            System.arraycopy(vector, 0, state[0], index * vector.length, vector.length);
+                        }
+                        else {
+                            Array.set(state[0], index, args[1]);
+                        }
+                        return null;
+                    }
+                    if (name.equals("get1Value")) {
+                        return Array.get(state[0], ((Integer) args[0]).intValue());
+                    }
+                    if (name.equals("getSize")) {
+                        return Integer.valueOf(state[0] == null ? 0 : Array.getLength(state[0]));
+                    }
+                    if (name.equals("getValue") && args != null && args.length == 1) {
+                        if (state[0] != null) {
+                            System.arraycopy(state[0], 0, args[0], 0, Array.getLength(state[0]));
+                        }
+                        return null;
+                    }
+                    if (name.equals("getValue") && state[0] != null) {
+                        return state[0];
+                    }
+                    if (name.equals("setUserData")) {
+                        state[1] = args[0];
+                        return null;
+                    }
+                    if (name.equals("getUserData")) {
+                        return state[1];
+                    }
+                    return defaultValue(proxy, method, args);
+                }
+            }));
+    }
+
+    /**
+     * Creates the script fields of an XNumbers instance of the specified
+     * dimensions, all other fields taking their default values.
+     *
+     * @param width the game's width
+     * @param height the game's height
+     *
+     * @return the fields by name, as a Map
+     */
+    public static Map<String, X3DField> scriptFields(int width, int height) {
+        return scriptFields(width, height, "TILES");
+    }
+
+    /**
+     * Creates the script fields of an XNumbers instance of the specified
+     * dimensions and render method, all other fields taking their default
+     * values.
+     *
+     * @param width the game's width
+     * @param height the game's height
+     * @param renderLogic the render method
+     *
+     * @return the fields by name, as a Map
+     */
+    public static Map<String, X3DField> scriptFields(int width, int height, String renderLogic) {
+        Map<String, X3DField> fields = new HashMap<String, X3DField>();
+        fields.put("width", field(SFInt32.class, Integer.valueOf(width)));
+        fields.put("height", field(SFInt32.class, Integer.valueOf(height)));
+        fields.put("children", field(MFNode.class, null));
+        fields.put("click", field(SFInt32.class, Integer.valueOf(0)));
+        fields.put("boardState", field(MFInt32.class, null));
+        fields.put("spawnLogic", field(SFString.class, "ORIGIN"));
+        fields.put("renderLogic", field(SFString.class, renderLogic));
+        fields.put("spawnLocations", field(MFFloat.class, new float[0]));
+        return fields;
+    }
+
+    /**
+     * Copies the specified value if it is an array, as browsers do not retain
+     * the arrays passed to setters.
+     *
+     * @param value the value
+     *
+     * @return the value or its copy
+     */
+    private static Object copy(Object value) {
+        if (value == null || !value.getClass().isArray()) {
+            return value;
+        }
+        int length = Array.getLength(value);
+        Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+        System.arraycopy(value, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Returns the default result of a method with no stub behaviour: the
+     * identity-based results of the Object methods, zero, false or null.
+     *
+     * @param proxy the proxy
+     * @param method the method
+     * @param args the arguments
+     *
+     * @return the result
+     */
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("hashCode")) {
+            return Integer.valueOf(System.identityHashCode(proxy));
+        }
+        if (name.equals("equals")) {
+            return Boolean.valueOf(proxy == args[0]);
+        }
+        if (name.equals("toString")) {
+            return "stub";
+        }
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == int.class) {
+            return Integer.valueOf(0);
+        }
+        if (type == float.class) {
+            return Float.valueOf(0);
+        }
+        if (type == double.class) {
+            return Double.valueOf(0);
+        }
+        if (type == long.class) {
+            return Long.valueOf(0);
+        }
+        return null;
+    }
+}
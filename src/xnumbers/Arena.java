@@ -0,0 +1,245 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.web3d.x3d.sai.SFBool;
+import org.web3d.x3d.sai.SFTime;
+import org.web3d.x3d.sai.X3DExecutionContext;
+import org.web3d.x3d.sai.X3DField;
+import org.web3d.x3d.sai.X3DFieldEvent;
+import org.web3d.x3d.sai.X3DFieldEventListener;
+import org.web3d.x3d.sai.X3DNode;
+import org.web3d.x3d.sai.X3DScene;
+
+/**
+ * <p>The manager of all XNumbers games in arena mode within a scene.</p>
+ *
+ * <p>Rather than each game having its own TimeSensor and listening to its
+ * own TouchSensors, games in an arena are timed by a single TimeSensor,
+ * ticking only while any game is being played, and receive their TouchSensor
+ * events through a single listener that dispatches each event to the game
+ * the sensor belongs to, the event's user data still identifying the tile or
+ * button. Along with the materials and shared nodes of the
+ * {@link MaterialRegistry}, the cost of a scene full of games hence grows
+ * with the number of tiles rather than with the number of games.</p>
+ *
+ * <p>Joining and leaving arenas is thread-safe. Otherwise, arenas are meant
+ * to be used from the browser's event delivery only.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class Arena implements X3DFieldEventListener {
+
+    /**
+     * Arenas, by scene.
+     */
+    private static final Map<X3DExecutionContext, Arena> arenas = new IdentityHashMap<X3DExecutionContext, Arena>();
+
+    /**
+     * The scene.
+     */
+    private final X3DScene scene;
+
+    /**
+     * The games in the arena.
+     */
+    private final ArrayList<XNumbers> games = new ArrayList<XNumbers>();
+
+    /**
+     * The games being timed.
+     */
+    private final ArrayList<XNumbers> timed = new ArrayList<XNumbers>();
+
+    /**
+     * The games to dispatch events to, by field.
+     */
+    private final Map<X3DField, XNumbers> targets = new IdentityHashMap<X3DField, XNumbers>();
+
+    /**
+     * The TimeSensor timing all games.
+     */
+    private final X3DNode timeSensor;
+
+    /**
+     * The enabled field of the TimeSensor.
+     */
+    private final SFBool timerEnabled;
+
+    /**
+     * The elapsedTime field of the TimeSensor.
+     */
+    private final SFTime elapsedTime;
+
+    /**
+     * The cycleTime field of the TimeSensor.
+     */
+    private final SFTime cycleTime;
+
+    /**
+     * Creates an arena in the specified scene.
+     *
+     * @param scene the scene
+     */
+    private Arena(X3DScene scene) {
+        this.scene = scene;
+        timeSensor = scene.createNode("TimeSensor");
+        ((SFBool) timeSensor.getField("loop")).setValue(true);
+        ((SFBool) timeSensor.getField("enabled")).setValue(false);
+        ((SFTime) timeSensor.getField("cycleInterval")).setValue(1.0f);
+        timerEnabled = (SFBool) timeSensor.getField("enabled");
+        elapsedTime = (SFTime) timeSensor.getField("elapsedTime");
+        cycleTime = (SFTime) timeSensor.getField("cycleTime");
+        cycleTime.addX3DEventListener(this);
+        scene.addRootNode(timeSensor);
+    }
+
+    /**
+     * Adds a game to the arena of the specified scene, creating the arena if
+     * needed.
+     *
+     * @param scene the scene
+     * @param game the game
+     *
+     * @return the arena, as an Arena, null if the execution context is not a
+     * scene, hence cannot host the arena's TimeSensor
+     */
+    public static Arena join(X3DExecutionContext scene, XNumbers game) {
+        if (!(scene instanceof X3DScene)) {
+            return null;
+        }
+        synchronized (arenas) {
+            Arena arena = arenas.get(scene);
+            if (arena == null) {
+                arena = new Arena((X3DScene) scene);
+                arenas.put(scene, arena);
+            }
+            arena.games.add(game);
+            return arena;
+        }
+    }
+
+    /**
+     * Removes a game from the arena, discarding the arena once empty.
+     *
+     * @param game the game
+     */
+    public void leave(XNumbers game) {
+        synchronized (arenas) {
+            forget(game);
+            timed.remove(game);
+            games.remove(game);
+            if (games.isEmpty()) {
+                cycleTime.removeX3DEventListener(this);
+                scene.removeRootNode(timeSensor);
+                arenas.remove(scene);
+            }
+        }
+    }
+
+    /**
+     * Dispatches events of the specified field to a game.
+     *
+     * @param field the field, usually the touchTime field of a TouchSensor
+     * @param game the game
+     */
+    public void listen(X3DField field, XNumbers game) {
+        if (targets.put(field, game) == null) {
+            field.addX3DEventListener(this);
+        }
+    }
+
+    /**
+     * Stops dispatching events to a game, e.g. when its model is rebuilt.
+     *
+     * @param game the game
+     */
+    public void forget(XNumbers game) {
+        Iterator<Map.Entry<X3DField, XNumbers>> i = targets.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<X3DField, XNumbers> e = i.next();
+            if (e.getValue() == game) {
+                e.getKey().removeX3DEventListener(this);
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Starts timing a game, enabling the TimeSensor if no other game is
+     * being timed.
+     *
+     * @param game the game
+     * @param updates the queue to write to the TimeSensor through
+     *
+     * @return the TimeSensor's elapsed time the game's time counts from
+     */
+    public double startTimer(XNumbers game, UpdateQueue updates) {
+        if (timed.isEmpty()) {
+            updates.setValue(timerEnabled, true);
+            timed.add(game);
+            return 0;
+        }
+        if (!timed.contains(game)) {
+            timed.add(game);
+        }
+        return elapsedTime.getValue();
+    }
+
+    /**
+     * Stops timing a game, disabling the TimeSensor if no other game is
+     * being timed.
+     *
+     * @param game the game
+     * @param updates the queue to write to the TimeSensor through
+     */
+    public void stopTimer(XNumbers game, UpdateQueue updates) {
+        if (timed.remove(game) && timed.isEmpty()) {
+            updates.setValue(timerEnabled, false);
+        }
+    }
+
+    /**
+     *
+     */
+    @Override public void readableFieldChanged(X3DFieldEvent x3DFieldEvent) {
+        if (x3DFieldEvent.getSource() == cycleTime) {
+            double t = elapsedTime.getValue();
+            // a game may stop its timer when ticked, hence iterate by index
+            // from the end...
+            for (int i = timed.size() - 1; i >= 0; i--) {
+                if (i < timed.size()) {
+                    timed.get(i).timerTicked(t);
+                }
+            }
+        }
+        else {
+            XNumbers game = targets.get(x3DFieldEvent.getSource());
+            if (game != null) {
+                game.readableFieldChanged(x3DFieldEvent);
+            }
+        }
+    }
+}
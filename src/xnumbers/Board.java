@@ -0,0 +1,606 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>The XNumbers board model.</p>
+ *
+ * <p>Cells are packed into 64-bit words, the free cell holding the missing
+ * tile index: boards of up to 16 cells fit in a single word of 4-bit cells,
+ * which then serves as the board's key, larger boards use as many bits per
+ * cell as needed to hold the largest tile index. Alongside the cells, the
+ * board maintains the cell of each tile and the free cell, and shares a
+ * precomputed table of the neighbours of each cell with all boards of the
+ * same dimensions, so that lookups, legality checks and moves take constant
+ * time.</p>
+ *
+ * <p>The number of misplaced tiles and their total Manhattan distance from
+ * their goal cells are kept up-to-date on every move, so that checking
+ * whether the board is solved also takes constant time.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class Board {
+
+    /**
+     * Neighbour table index offset of the cell above.
+     */
+    public static final int UP = 0;
+
+    /**
+     * Neighbour table index offset of the cell below.
+     */
+    public static final int DOWN = 1;
+
+    /**
+     * Neighbour table index offset of the cell on the left.
+     */
+    public static final int LEFT = 2;
+
+    /**
+     * Neighbour table index offset of the cell on the right.
+     */
+    public static final int RIGHT = 3;
+
+    /**
+     * Neighbour tables computed so far, by dimensions.
+     */
+    private static final ConcurrentMap<Long, int[]> neighbourTables = new ConcurrentHashMap<Long, int[]>();
+
+    /**
+     * The board's width.
+     */
+    private final int width;
+
+    /**
+     * The board's height.
+     */
+    private final int height;
+
+    /**
+     * The number of cells.
+     */
+    private final int size;
+
+    /**
+     * The neighbours of each cell.
+     */
+    private final int[] neighbours;
+
+    /**
+     * Bits per cell.
+     */
+    private final int bits;
+
+    /**
+     * Cells per word.
+     */
+    private final int cellsPerWord;
+
+    /**
+     * Cell value mask.
+     */
+    private final long mask;
+
+    /**
+     * The packed cells.
+     */
+    private final long[] words;
+
+    /**
+     * The cell of each tile, the missing tile's entry holding the free cell.
+     */
+    private final int[] positions;
+
+    /**
+     * The missing tile index.
+     */
+    private int missingTileIndex = -1;
+
+    /**
+     * The free cell.
+     */
+    private int free = -1;
+
+    /**
+     * The number of tiles, other than the missing one, not at their goal
+     * cells.
+     */
+    private int misplaced = 0;
+
+    /**
+     * The sum of the Manhattan distances of all tiles, other than the missing
+     * one, from their goal cells.
+     */
+    private int manhattan = 0;
+
+    /**
+     * Creates a solved board of the specified dimensions.
+     *
+     * @param width the board's width
+     * @param height the board's height
+     * @param missingTileIndex the missing tile index
+     */
+    public Board(int width, int height, int missingTileIndex) {
+        this.width = width;
+        this.height = height;
+        this.size = width * height;
+        this.neighbours = neighbours(width, height);
+        this.bits = size <= 16 ? 4 : 32 - Integer.numberOfLeadingZeros(size - 1);
+        this.cellsPerWord = 64 / bits;
+        this.mask = (1L << bits) - 1;
+        this.words = new long[(size + cellsPerWord - 1) / cellsPerWord];
+        this.positions = new int[size];
+        reset(missingTileIndex);
+    }
+
+    /**
+     * Creates a copy of the specified board.
+     *
+     * @param board the board to copy
+     */
+    public Board(Board board) {
+        this.width = board.width;
+        this.height = board.height;
+        this.size = board.size;
+        this.neighbours = board.neighbours;
+        this.bits = board.bits;
+        this.cellsPerWord = board.cellsPerWord;
+        this.mask = board.mask;
+        this.words = board.words.clone();
+        this.positions = board.positions.clone();
+        this.missingTileIndex = board.missingTileIndex;
+        this.free = board.free;
+        this.misplaced = board.misplaced;
+        this.manhattan = board.manhattan;
+    }
+
+    /**
+     * Returns the table of neighbours for boards of the specified dimensions.
+     * The table holds four entries per cell, indexed by the cell times four
+     * plus {@link #UP}, {@link #DOWN}, {@link #LEFT} or {@link #RIGHT}, -1
+     * denoting no neighbour. Tables are computed once and shared, hence must
+     * not be modified.
+     *
+     * @param width the board's width
+     * @param height the board's height
+     *
+     * @return the neighbour table, as an int[]
+     */
+    public static int[] neighbours(int width, int height) {
+        Long key = Long.valueOf(((long) width << 32) | height);
+        int[] table = neighbourTables.get(key);
+        if (table == null) {
+            int size = width * height;
+            table = new int[size * 4];
+            for (int i = 0; i != size; i++) {
+                table[i * 4 + UP] = i >= width ? i - width : -1;
+                table[i * 4 + DOWN] = i < width * (height - 1) ? i + width : -1;
+                table[i * 4 + LEFT] = i % width != 0 ? i - 1 : -1;
+                table[i * 4 + RIGHT] = (i + 1) % width != 0 ? i + 1 : -1;
+            }
+            int[] existing = neighbourTables.putIfAbsent(key, table);
+            if (existing != null) {
+                table = existing;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Returns the board's width.
+     *
+     * @return the width, as an int
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the board's height.
+     *
+     * @return the height, as an int
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of cells.
+     *
+     * @return the number of cells, as an int
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the missing tile index.
+     *
+     * @return the missing tile index, as an int
+     */
+    public int getMissingTileIndex() {
+        return missingTileIndex;
+    }
+
+    /**
+     * Returns the free cell.
+     *
+     * @return the free cell, as an int
+     */
+    public int getFree() {
+        return free;
+    }
+
+    /**
+     * Returns the number of tiles, other than the missing one, not at their
+     * goal cells.
+     *
+     * @return the number of misplaced tiles, as an int
+     */
+    public int getMisplaced() {
+        return misplaced;
+    }
+
+    /**
+     * Returns the sum of the Manhattan distances of all tiles, other than the
+     * missing one, from their goal cells.
+     *
+     * @return the Manhattan distance, as an int
+     */
+    public int getManhattan() {
+        return manhattan;
+    }
+
+    /**
+     * Checks whether all tiles are at their goal cells.
+     *
+     * @return true if the board is solved, false otherwise
+     */
+    public boolean isSolved() {
+        return misplaced == 0;
+    }
+
+    /**
+     * Returns the index of the tile at the specified cell.
+     *
+     * @param cell the cell
+     *
+     * @return the tile index, -1 if the cell is free
+     */
+    public int get(int cell) {
+        return cell == free ? -1 : read(cell);
+    }
+
+    /**
+     * Returns the cell of the specified tile.
+     *
+     * @param tile the tile index
+     *
+     * @return the cell, -1 if the tile is the missing one or out of range
+     */
+    public int positionOf(int tile) {
+        return tile < 0 || tile >= size || tile == missingTileIndex ? -1 : positions[tile];
+    }
+
+    /**
+     * Returns the free cell if it is adjacent to the specified cell.
+     *
+     * @param cell the cell
+     *
+     * @return the free cell if adjacent to the specified cell, -1 otherwise
+     */
+    public int freeNeighbour(int cell) {
+        if (cell < 0 || cell >= size) {
+            return -1;
+        }
+        int base = cell * 4;
+        if (neighbours[base + UP] == free || neighbours[base + DOWN] == free ||
+            neighbours[base + LEFT] == free || neighbours[base + RIGHT] == free) {
+            return free;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether the specified tile can be moved.
+     *
+     * @param tile the tile index
+     *
+     * @return true if the tile is adjacent to the free cell, false otherwise
+     */
+    public boolean canMove(int tile) {
+        int cell = positionOf(tile);
+        return cell != -1 && freeNeighbour(cell) != -1;
+    }
+
+    /**
+     * Moves the specified tile into the free cell, if adjacent.
+     *
+     * @param tile the tile index
+     *
+     * @return the cell the tile has been moved from, which becomes the free
+     * cell, -1 if the tile cannot be moved
+     */
+    public int move(int tile) {
+        int from = positionOf(tile);
+        if (from == -1 || freeNeighbour(from) == -1) {
+            return -1;
+        }
+        int to = free;
+        write(to, tile);
+        write(from, missingTileIndex);
+        positions[tile] = to;
+        positions[missingTileIndex] = from;
+        free = from;
+        if (from == tile) {
+            misplaced++;
+        }
+        else if (to == tile) {
+            misplaced--;
+        }
+        manhattan += distance(to, tile) - distance(from, tile);
+        return from;
+    }
+
+    /**
+     * Resets the board to the solved arrangement for the specified missing
+     * tile index.
+     *
+     * @param missingTileIndex the missing tile index
+     */
+    public void reset(int missingTileIndex) {
+        this.missingTileIndex = missingTileIndex;
+        Arrays.fill(words, 0);
+        for (int i = 0; i != size; i++) {
+            write(i, i);
+            positions[i] = i;
+        }
+        free = missingTileIndex;
+        misplaced = 0;
+        manhattan = 0;
+    }
+
+    /**
+     * Sets the board to the specified arrangement.
+     *
+     * @param cells the index of the tile at each cell, -1 for the free cell,
+     * as an int[]
+     * @param missingTileIndex the missing tile index
+     *
+     * @throws IllegalArgumentException if the arrangement is not a
+     * permutation of the board's tiles
+     */
+    public void set(int[] cells, int missingTileIndex) {
+        if (cells.length != size) {
+            throw new IllegalArgumentException("Arrangement of " + cells.length + " cells given for a board of " + size);
+        }
+        this.missingTileIndex = missingTileIndex;
+        Arrays.fill(positions, -1);
+        free = -1;
+        misplaced = 0;
+        manhattan = 0;
+        for (int i = 0; i != size; i++) {
+            int tile = cells[i] == -1 ? missingTileIndex : cells[i];
+            if (tile < 0 || tile >= size || positions[tile] != -1) {
+                throw new IllegalArgumentException("Invalid tile " + cells[i] + " at cell " + i);
+            }
+            write(i, tile);
+            positions[tile] = i;
+            if (tile != missingTileIndex && tile != i) {
+                misplaced++;
+                manhattan += distance(i, tile);
+            }
+        }
+        free = positions[missingTileIndex];
+    }
+
+    /**
+     * Sets the board to the arrangement of the specified board of the same
+     * dimensions.
+     *
+     * @param board the board to copy
+     *
+     * @throws IllegalArgumentException if the boards' dimensions differ
+     */
+    public void set(Board board) {
+        if (board.width != width || board.height != height) {
+            throw new IllegalArgumentException("Board of " + board.width + "x" + board.height + " given for a board of " + width + "x" + height);
+        }
+        System.arraycopy(board.words, 0, words, 0, words.length);
+        System.arraycopy(board.positions, 0, positions, 0, size);
+        missingTileIndex = board.missingTileIndex;
+        free = board.free;
+        misplaced = board.misplaced;
+        manhattan = board.manhattan;
+    }
+
+    /**
+     * Returns the number of bytes the packed cells take.
+     *
+     * @return the number of bytes, as an int
+     *
+     * @see #writeTo(ByteBuffer)
+     */
+    public int getPackedSize() {
+        return words.length * 8;
+    }
+
+    /**
+     * Writes the packed cells to the specified buffer, at its position.
+     *
+     * @param buffer the buffer
+     *
+     * @throws java.nio.BufferOverflowException if the buffer has fewer than
+     * {@link #getPackedSize()} bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        for (int i = 0; i != words.length; i++) {
+            buffer.putLong(words[i]);
+        }
+    }
+
+    /**
+     * Sets the board to the packed cells read from the specified buffer, at
+     * its position, as written by {@link #writeTo(ByteBuffer)}.
+     *
+     * @param buffer the buffer
+     * @param missingTileIndex the missing tile index
+     *
+     * @throws java.nio.BufferUnderflowException if the buffer has fewer than
+     * {@link #getPackedSize()} bytes remaining
+     * @throws IllegalArgumentException if the cells are not a permutation of
+     * the board's tiles, in which case the board is left in an unspecified
+     * arrangement
+     */
+    public void readFrom(ByteBuffer buffer, int missingTileIndex) {
+        if (missingTileIndex < 0 || missingTileIndex >= size) {
+            throw new IllegalArgumentException("Invalid missing tile " + missingTileIndex);
+        }
+        for (int i = 0; i != words.length; i++) {
+            words[i] = buffer.getLong();
+        }
+        this.missingTileIndex = missingTileIndex;
+        Arrays.fill(positions, -1);
+        misplaced = 0;
+        manhattan = 0;
+        for (int i = 0; i != size; i++) {
+            int tile = read(i);
+            if (tile >= size || positions[tile] != -1) {
+                throw new IllegalArgumentException("Invalid tile " + tile + " at cell " + i);
+            }
+            positions[tile] = i;
+            if (tile != missingTileIndex && tile != i) {
+                misplaced++;
+                manhattan += distance(i, tile);
+            }
+        }
+        free = positions[missingTileIndex];
+    }
+
+    /**
+     * Copies the arrangement of the board to the specified array, allocating
+     * one if needed.
+     *
+     * @param cells the array to copy to, null to allocate a new one
+     *
+     * @return the index of the tile at each cell, -1 for the free cell, as an
+     * int[]
+     */
+    public int[] toArray(int[] cells) {
+        if (cells == null || cells.length != size) {
+            cells = new int[size];
+        }
+        for (int i = 0; i != size; i++) {
+            cells[i] = read(i);
+        }
+        cells[free] = -1;
+        return cells;
+    }
+
+    /**
+     * Returns the board's key: the packed cells of a board of up to 16
+     * cells, which uniquely identifies its arrangement.
+     *
+     * @return the key, as a long
+     *
+     * @throws IllegalStateException if the board has more than 16 cells
+     */
+    public long getKey() {
+        if (words.length != 1 || bits != 4) {
+            throw new IllegalStateException("Board of " + size + " cells has no single-word key");
+        }
+        return words[0];
+    }
+
+    /**
+     *
+     */
+    @Override public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    /**
+     *
+     */
+    @Override public boolean equals(Object o) {
+        if (!(o instanceof Board)) {
+            return false;
+        }
+        Board b = (Board) o;
+        return b.width == width && b.height == height && b.missingTileIndex == missingTileIndex && Arrays.equals(b.words, words);
+    }
+
+    /**
+     *
+     */
+    @Override public String toString() {
+        StringBuffer s = new StringBuffer();
+        for (int i = 0; i != size; i++) {
+            if (i != 0) {
+                s.append(", ");
+            }
+            s.append(get(i));
+        }
+        return s.toString();
+    }
+
+    /**
+     * Returns the Manhattan distance between two cells.
+     *
+     * @param a the first cell
+     * @param b the second cell
+     *
+     * @return the distance, as an int
+     */
+    private int distance(int a, int b) {
+        return Math.abs(a / width - b / width) + Math.abs(a % width - b % width);
+    }
+
+    /**
+     * Reads the raw value of the specified cell.
+     *
+     * @param cell the cell
+     *
+     * @return the raw value, as an int
+     */
+    private int read(int cell) {
+        int shift = (cell % cellsPerWord) * bits;
+        return (int) ((words[cell / cellsPerWord] >>> shift) & mask);
+    }
+
+    /**
+     * Writes the raw value of the specified cell.
+     *
+     * @param cell the cell
+     * @param value the raw value
+     */
+    private void write(int cell, int value) {
+        int w = cell / cellsPerWord;
+        int shift = (cell % cellsPerWord) * bits;
+        words[w] = (words[w] & ~(mask << shift)) | ((long) value << shift);
+    }
+}
@@ -0,0 +1,1145 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>The XNumbers game logic, independent of any presentation.</p>
+ *
+ * <p>A game manages the board data and the game's state according to the
+ * button and tile clicks fed to {@link #process(int)}, and notifies its
+ * {@link GameListener}, if any, of every change to be presented. Games do not
+ * depend on the X3D SAI, hence may be run headless, e.g. to simulate games in
+ * bulk.</p>
+ *
+ * <p>Games are not thread-safe.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class Game {
+
+    /**
+     * Default new game shuffle depth.
+     */
+    public static final int DEFAULT_SHUFFLE_DEPTH = 25;
+
+    /**
+     * Default maximum number of nodes the solver may expand while generating
+     * a board of a given difficulty, keeping generation short enough for the
+     * browser's event thread.
+     */
+    public static final long DEFAULT_GENERATION_NODE_LIMIT = 250000L;
+
+    /**
+     * Known largest optimal solution lengths, i.e. diameters, of boards of
+     * up to 16 cells, by width and height, 0 where not known.
+     */
+    private static final int[][] DIAMETERS = {
+        {0, 0, 0, 0, 0, 0, 0},
+        {0, 0, 0, 0, 0, 0, 0},
+        {0, 0, 6, 21, 36, 55, 80},
+        {0, 0, 21, 31, 53, 84, 0},
+        {0, 0, 36, 53, 80, 0, 0}
+    };
+
+    /**
+     * State: no game is being played, the ordered arrangement is displayed.
+     */
+    public static final int STATE_WELCOME = 0;
+
+    /**
+     * State: a game is being played.
+     */
+    public static final int STATE_PLAYING = 1;
+
+    /**
+     * State: a game has been solved or aborted and may be reset.
+     */
+    public static final int STATE_OVER = 2;
+
+    /**
+     * Id of the start/abort/reset button.
+     */
+    public static final int BUTTON_MAIN = -1;
+
+    /**
+     * Id of the help button.
+     */
+    public static final int BUTTON_HELP = -2;
+
+    /**
+     * Id of the solve button.
+     */
+    public static final int BUTTON_SOLVE = -3;
+
+    /**
+     * Id of the undo button.
+     */
+    public static final int BUTTON_UNDO = -4;
+
+    /**
+     * Id of the redo button.
+     */
+    public static final int BUTTON_REDO = -5;
+
+    /**
+     * Available shuffle methods.
+     */
+    public enum ShuffleMethod {
+
+        /**
+         * Perform a random walk of {@link #DEFAULT_SHUFFLE_DEPTH} moves from
+         * the solved arrangement.
+         */
+        WALK,
+
+        /**
+         * Select a uniformly random solvable arrangement.
+         */
+        RANDOM
+    };
+
+    /**
+     * The game's width.
+     */
+    private final int width;
+
+    /**
+     * The game's height.
+     */
+    private final int height;
+
+    /**
+     * Shuffle method.
+     */
+    private ShuffleMethod shuffleLogic = ShuffleMethod.WALK;
+
+    /**
+     * The smallest optimal solution length of generated boards, 0 to shuffle
+     * according to the shuffle method instead.
+     */
+    private int minDifficulty = 0;
+
+    /**
+     * The largest optimal solution length of generated boards.
+     */
+    private int maxDifficulty = 0;
+
+    /**
+     * Maximum number of nodes to expand while generating a board of a given
+     * difficulty.
+     */
+    private long generationNodeLimit = DEFAULT_GENERATION_NODE_LIMIT;
+
+    /**
+     * Whether a restart is offered once a game has been solved.
+     */
+    private boolean restartOffered = true;
+
+    /**
+     * Directory holding pattern databases for the solver, null if none.
+     */
+    private String patternDatabases = null;
+
+    /**
+     * The listener, null if none.
+     */
+    private GameListener listener = null;
+
+    /**
+     * The event trace.
+     */
+    private Trace trace = new Trace(0);
+
+    /**
+     * The source of randomness for shuffling.
+     */
+    private RandomSource random = new RandomSource();
+
+    /**
+     * The board data.
+     */
+    private Board board = null;
+
+    /**
+     * Missing tile index.
+     */
+    private int missingTileIndex = -1;
+
+    /**
+     * The game's state.
+     */
+    private int state = STATE_WELCOME;
+
+    /**
+     * Step count.
+     */
+    private int steps = 0;
+
+    /**
+     * The moves of the current game.
+     */
+    private MoveHistory history = new MoveHistory();
+
+    /**
+     * The arrangement the current game has started from, null until a game
+     * is first started.
+     */
+    private Board start = null;
+
+    /**
+     * The metrics games and moves are counted in, null if none.
+     */
+    private Metrics metrics = null;
+
+    /**
+     * The log sessions are recorded to, null if none.
+     */
+    private SessionLog log = null;
+
+    /**
+     * The id of the session being recorded, 0 if none.
+     */
+    private long session = 0;
+
+    /**
+     * The neighbours of each cell, as given by {@link Board#neighbours(int, int)}.
+     */
+    private final int[] neighbours;
+
+    /**
+     * Creates a game of the specified dimensions.
+     *
+     * @param width the game's width
+     * @param height the game's height
+     */
+    public Game(int width, int height) {
+        this.width = width;
+        this.height = height;
+        neighbours = Board.neighbours(width, height);
+    }
+
+    /**
+     * Returns the game's width.
+     *
+     * @return the width, as an int
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the game's height.
+     *
+     * @return the height, as an int
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the board data.
+     *
+     * @return the board, as a Board, null until data are first reset
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * Returns the missing tile index.
+     *
+     * @return the missing tile index, as an int
+     */
+    public int getMissingTileIndex() {
+        return missingTileIndex;
+    }
+
+    /**
+     * Returns the game's state.
+     *
+     * @return one of {@link #STATE_WELCOME}, {@link #STATE_PLAYING} and
+     * {@link #STATE_OVER}
+     */
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * Returns the number of moves made in the current game.
+     *
+     * @return the step count, as an int
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the moves of the current game.
+     *
+     * @return the history, as a MoveHistory
+     */
+    public MoveHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Sets the shuffle method.
+     *
+     * @param shuffleLogic the shuffle method
+     */
+    public void setShuffleLogic(ShuffleMethod shuffleLogic) {
+        this.shuffleLogic = shuffleLogic;
+    }
+
+    /**
+     * Sets the range of optimal solution lengths of generated boards. Boards
+     * are then generated by {@link #resetDataDifficulty(boolean, int, int)}
+     * regardless of the shuffle method. Lengths no arrangement of the board
+     * needs, as per {@link #getMaxDifficulty(int, int)}, are clamped.
+     *
+     * @param minDifficulty the smallest solution length, 0 to shuffle
+     * according to the shuffle method instead
+     * @param maxDifficulty the largest solution length
+     */
+    public void setDifficulty(int minDifficulty, int maxDifficulty) {
+        int reach = getMaxDifficulty(width, height);
+        this.minDifficulty = Math.max(0, Math.min(minDifficulty, reach));
+        this.maxDifficulty = Math.max(this.minDifficulty, Math.min(maxDifficulty, reach));
+    }
+
+    /**
+     * Sets the maximum number of nodes the solver may expand while generating
+     * a board of a given difficulty, after which the board is shuffled
+     * instead.
+     *
+     * @param generationNodeLimit the node limit
+     */
+    public void setGenerationNodeLimit(long generationNodeLimit) {
+        this.generationNodeLimit = generationNodeLimit;
+    }
+
+    /**
+     * Returns the largest optimal solution length of any arrangement of a
+     * board of the specified dimensions, where known. Tiles of single-row
+     * and single-column boards keep their order, hence only the free cell
+     * has to be moved to its goal.
+     *
+     * @param width the board's width
+     * @param height the board's height
+     *
+     * @return the length, as an int, or Integer.MAX_VALUE if not known
+     */
+    public static int getMaxDifficulty(int width, int height) {
+        if (width == 1 || height == 1) {
+            return width * height - 1;
+        }
+        int w = Math.min(width, height);
+        int h = Math.max(width, height);
+        if (w < DIAMETERS.length && h < DIAMETERS[w].length && DIAMETERS[w][h] != 0) {
+            return DIAMETERS[w][h];
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Sets whether a restart is offered once a game has been solved. If not,
+     * the game returns straight to {@link #STATE_WELCOME}.
+     *
+     * @param restartOffered true if a restart is offered, false otherwise
+     */
+    public void setRestartOffered(boolean restartOffered) {
+        this.restartOffered = restartOffered;
+    }
+
+    /**
+     * Sets the directory holding pattern databases for the solver.
+     *
+     * @param patternDatabases the directory, null if none
+     */
+    public void setPatternDatabases(String patternDatabases) {
+        this.patternDatabases = patternDatabases;
+    }
+
+    /**
+     * Sets the listener.
+     *
+     * @param listener the listener, null if none
+     */
+    public void setListener(GameListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the trace to record game events to.
+     *
+     * @param trace the trace
+     */
+    public void setTrace(Trace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Sets the metrics to count games and moves in and to time board
+     * generation with.
+     *
+     * @param metrics the metrics, null if none
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the log to record game sessions to, ending the session being
+     * recorded to the previous log, if any, as interrupted.
+     *
+     * @param log the log, null if none
+     */
+    public void setSessionLog(SessionLog log) {
+        endSession(SessionLog.INTERRUPTED);
+        this.log = log;
+    }
+
+    /**
+     * Sets the source of randomness for shuffling. Given sources seeded
+     * alike, games shuffle alike.
+     *
+     * @param random the source of randomness
+     */
+    public void setRandom(RandomSource random) {
+        this.random = random;
+    }
+
+    /*** Game logic ***********************************************************/
+
+    /**
+     * An initialization method that randomly arranges tiles and selects missing
+     * one. Every solvable arrangement is equally likely, and generation takes
+     * linear time regardless of the board's size.
+     * @param isLastMissing true if the missing tile should always be the last
+     * one, false otherwise
+     */
+    public void resetDataRandom(boolean isLastMissing) {
+        int size = width * height;
+        int maxIndex = size - 1;
+        missingTileIndex = isLastMissing ? maxIndex : random.nextInt(size);
+        trace.record(Trace.RESET, missingTileIndex, 0);
+        int[] cells = new int[size];
+        Permutations.randomSolvable(cells, width, missingTileIndex, random);
+        if (board == null) {
+            board = new Board(width, height, missingTileIndex);
+        }
+        board.set(cells, missingTileIndex);
+    }
+
+    /**
+     * An initialization method that arranges tiles by sequentially performing
+     * random moves and randomly selects a missing tile. Guarantees solvability.
+     * @param isLastMissing true if the missing tile should always be the last
+     * one, false otherwise
+     */
+    public void resetData(boolean isLastMissing) {
+        int size = width * height;
+        int maxIndex = size - 1;
+        missingTileIndex = isLastMissing ? maxIndex : random.nextInt(size);
+        if (board == null) {
+            board = new Board(width, height, missingTileIndex);
+        }
+        else {
+            board.reset(missingTileIndex);
+        }
+        trace.record(Trace.RESET, missingTileIndex, 0);
+
+        // the tiles that may be moved are exactly the free cell's
+        // neighbours, hence pick one of them at random on each step...
+        int[] neighbours = Board.neighbours(width, height);
+        int[] free = new int[4];
+        int freeCount;
+        int optionIndex;
+        for (int i = 0; i != DEFAULT_SHUFFLE_DEPTH; i++) {
+            freeCount = 0;
+            for (int d = 0; d != 4; d++) {
+                int cell = neighbours[board.getFree() * 4 + d];
+                if (cell != -1) {
+                    free[freeCount++] = cell;
+                }
+            }
+            optionIndex = free[random.nextInt(freeCount)];
+            trace.record(Trace.SHUFFLE, i, optionIndex);
+            board.move(board.get(optionIndex));
+        }
+    }
+
+    /**
+     * An initialization method that randomly selects a missing tile and
+     * arranges tiles so that the length of an optimal solution is within the
+     * specified range.
+     *
+     * <p>Tiles are arranged by a walk from the solved arrangement that moves
+     * one step farther from it on each move. Every move changes the distance
+     * by exactly one, hence a neighbour of an arrangement at distance k is
+     * farther unless it can be solved in k - 1 moves, which a search bounded
+     * by k - 1 settles. Should all neighbours be closer, the walk steps back
+     * and carries on. The distance of the resulting arrangement is therefore
+     * known exactly. Should the walk fail to reach the range within a bounded
+     * number of moves, e.g. when very few arrangements are that far from the
+     * goal, the arrangement last reached is used.</p>
+     *
+     * <p>The searches share a budget of nodes, as per
+     * {@link #setGenerationNodeLimit(long)}, since those close to the far end
+     * of the range grow exponentially. Should the budget run out, the
+     * arrangement last reached is used as well, unless the walk has not
+     * left the goal yet, in which case the board is shuffled by
+     * {@link #resetData(boolean)} instead.</p>
+     *
+     * @param isLastMissing true if the missing tile should always be the last
+     * one, false otherwise
+     * @param minLength the smallest optimal solution length
+     * @param maxLength the largest optimal solution length
+     *
+     * @return the length of an optimal solution of the arrangement, as an
+     * int, or -1 if the board has been shuffled instead
+     */
+    public int resetDataDifficulty(boolean isLastMissing, int minLength, int maxLength) {
+        int size = width * height;
+        int maxIndex = size - 1;
+        missingTileIndex = isLastMissing ? maxIndex : random.nextInt(size);
+        if (board == null) {
+            board = new Board(width, height, missingTileIndex);
+        }
+        else {
+            board.reset(missingTileIndex);
+        }
+        trace.record(Trace.RESET, missingTileIndex, 0);
+
+        int target = minLength + random.nextInt(maxLength - minLength + 1);
+        Solver solver = createSolver();
+        int[] neighbours = Board.neighbours(width, height);
+        int[] cells = new int[size];
+        int[] options = new int[4];
+        int distance = 0;
+        int previous = -1;
+        int back = -1;
+        long budget = generationNodeLimit;
+        for (int i = 0; distance < target && i != target * 16; i++) {
+            // consider the free cell's neighbours in random order, except
+            // for the one just left...
+            int optionCount = 0;
+            int origin = board.getFree();
+            for (int d = 0; d != 4; d++) {
+                int cell = neighbours[origin * 4 + d];
+                if (cell != -1 && cell != previous) {
+                    int j = random.nextInt(optionCount + 1);
+                    options[optionCount++] = options[j];
+                    options[j] = cell;
+                }
+            }
+            int closer = back;
+            boolean farther = false;
+            for (int k = 0; k != optionCount && !farther; k++) {
+                int tile = board.get(options[k]);
+                board.move(tile);
+                solver.setNodeLimit(budget);
+                int result = solver.distance(board.toArray(cells), distance - 1);
+                budget -= solver.getNodeCount();
+                if (budget <= 0) {
+                    // out of time for the event thread, settle for the
+                    // arrangement reached, whose distance is known...
+                    board.move(tile);
+                    if (distance == 0) {
+                        resetData(isLastMissing);
+                        return -1;
+                    }
+                    return distance;
+                }
+                if (result == -1) {
+                    farther = true;
+                }
+                else {
+                    if (result != -2) {
+                        closer = options[k];
+                    }
+                    board.move(tile);
+                }
+            }
+            if (farther) {
+                distance++;
+                previous = origin;
+                back = origin;
+            }
+            else if (closer != -1) {
+                // a local maximum, step back...
+                board.move(board.get(closer));
+                distance--;
+                previous = origin;
+                back = -1;
+            }
+            else {
+                // nothing is known about the neighbours...
+                break;
+            }
+            trace.record(Trace.SHUFFLE, i, distance);
+        }
+        return distance;
+    }
+
+    /**
+     * Starts a new game on a board generated according to the difficulty, if
+     * set, or shuffled according to the current shuffle method otherwise.
+     */
+    protected void startGame() {
+        long begin = metrics != null ? System.nanoTime() : 0;
+        if (minDifficulty > 0) {
+            resetDataDifficulty(false, minDifficulty, maxDifficulty);
+        }
+        else {
+            switch (shuffleLogic) {
+                case RANDOM:
+                    resetDataRandom(false);
+                    break;
+                case WALK:
+                default:
+                    resetData(false);
+                    break;
+            }
+        }
+        if (metrics != null) {
+            metrics.dataReset(System.nanoTime() - begin);
+        }
+        beginGame();
+    }
+
+    /**
+     * Starts a new game on the specified arrangement rather than a shuffled
+     * one, e.g. to replay a recorded session.
+     *
+     * @param board the arrangement, of the game's dimensions
+     *
+     * @throws IllegalArgumentException if the arrangement's dimensions differ
+     * from the game's
+     */
+    public void startGame(Board board) {
+        startGame(board, null, 0);
+    }
+
+    /**
+     * Starts a game on the specified arrangement with the moves of the
+     * specified history up to its position already made, e.g. to replay a
+     * recorded session that has gone on from a restored or replayed game.
+     * Moves past the position remain available for redoing.
+     *
+     * @param board the arrangement the game has started from, of the game's
+     * dimensions
+     * @param moves the move history, which the game takes over, null for
+     * none
+     * @param steps the step count to start from
+     *
+     * @throws IllegalArgumentException if the arrangement's dimensions differ
+     * from the game's or the history holds a move off the board
+     */
+    public void startGame(Board board, MoveHistory moves, int steps) {
+        if (board.getWidth() != width || board.getHeight() != height) {
+            throw new IllegalArgumentException("Board of " + board.getWidth() + "x" + board.getHeight() + " given for a game of " + width + "x" + height);
+        }
+        Board newBoard = moves != null ? play(board, moves) : board;
+        missingTileIndex = board.getMissingTileIndex();
+        if (this.board == null) {
+            this.board = new Board(newBoard);
+        }
+        else {
+            this.board.set(newBoard);
+        }
+        trace.record(Trace.RESET, missingTileIndex, 1);
+        beginGame(board, moves, steps);
+    }
+
+    /**
+     * Starts playing on the current arrangement.
+     */
+    private void beginGame() {
+        beginGame(board, null, 0);
+    }
+
+    /**
+     * Starts playing on the current arrangement, reached from the specified
+     * one by the specified moves.
+     *
+     * @param origin the arrangement the game has started from
+     * @param moves the move history, null for none
+     * @param newSteps the step count to start from
+     */
+    private void beginGame(Board origin, MoveHistory moves, int newSteps) {
+        endSession(SessionLog.INTERRUPTED);
+        steps = newSteps;
+        if (moves != null) {
+            history = moves;
+        }
+        else {
+            history.clear();
+        }
+        if (start == null) {
+            start = new Board(origin);
+        }
+        else {
+            start.set(origin);
+        }
+        beginSession();
+        setState(STATE_PLAYING);
+        if (metrics != null) {
+            metrics.gameStarted();
+        }
+        if (listener != null) {
+            listener.gameStarted(this);
+        }
+    }
+
+    /**
+     * Starts recording a session from the current arrangement, if recording.
+     */
+    private void beginSession() {
+        if (log != null) {
+            session = log.begin(start, history, steps);
+        }
+    }
+
+    /**
+     * Ends the session being recorded, if any.
+     *
+     * @param outcome the session's outcome, as defined by {@link SessionLog}
+     */
+    private void endSession(int outcome) {
+        if (session != 0) {
+            log.end(session, outcome, steps);
+            session = 0;
+        }
+    }
+
+    /**
+     * Ends the current game, offering a restart if so configured.
+     */
+    protected void endGame() {
+        endSession(SessionLog.SOLVED);
+        if (metrics != null) {
+            metrics.gameCompleted();
+        }
+        setState(restartOffered ? STATE_OVER : STATE_WELCOME);
+        if (listener != null) {
+            listener.gameEnded(this);
+        }
+    }
+
+    /**
+     * Aborts the current game.
+     */
+    protected void abortGame() {
+        endSession(SessionLog.ABORTED);
+        if (metrics != null) {
+            metrics.gameAborted();
+        }
+        setState(STATE_OVER);
+        if (listener != null) {
+            listener.gameAborted(this);
+        }
+    }
+
+    /**
+     * Resets the game to the ordered arrangement.
+     */
+    protected void resetGame() {
+        board.reset(missingTileIndex);
+        setState(STATE_WELCOME);
+        if (listener != null) {
+            listener.gameReset(this);
+        }
+    }
+
+    /**
+     * Sets the game's state.
+     *
+     * @param newState the new state
+     */
+    protected void setState(int newState) {
+        trace.record(Trace.STATE, state, newState);
+        state = newState;
+    }
+
+    /**
+     * Handler for player actions (i.e., tile clicks). Moves the tile if it is
+     * adjacent to the free cell.
+     *
+     * @param id id of the tile the player has clicked on
+     */
+    protected void playerAction(int id) {
+        int to = board.getFree();
+        int from = board.move(id);
+        trace.record(Trace.MOVE, id, from);
+        if (from != -1) {
+            history.record(direction(to, from));
+            steps++;
+            if (metrics != null) {
+                metrics.tileMoved();
+            }
+            if (listener != null) {
+                listener.tileMoved(this, id, from);
+            }
+        }
+    }
+
+    /**
+     * Handler for undo and redo actions. Moves the free cell in the specified
+     * direction, as told by the history, without recording the move.
+     *
+     * @param direction the direction, -1 if there is nothing to undo or redo
+     * @param delta the change to the step count
+     */
+    protected void historyAction(int direction, int delta) {
+        if (direction == -1) {
+            return;
+        }
+        int to = board.getFree();
+        int cell = neighbours[to * 4 + direction];
+        int id = board.get(cell);
+        int from = board.move(id);
+        trace.record(Trace.MOVE, id, from);
+        steps += delta;
+        if (metrics != null) {
+            metrics.tileMoved();
+        }
+        if (listener != null) {
+            listener.tileMoved(this, id, from);
+        }
+    }
+
+    /**
+     * Replays the current game to the specified step, i.e. restores the
+     * arrangement the game has started from and applies the first moves of
+     * its history up to the step. Moves past the step remain available for
+     * redoing. Replaying takes time linear in the step and does not shuffle
+     * again.
+     *
+     * @param step the number of moves to apply
+     *
+     * @throws IllegalStateException if no game has been started
+     * @throws IndexOutOfBoundsException if the step exceeds the number of
+     * moves recorded
+     */
+    public void replay(int step) {
+        if (start == null) {
+            throw new IllegalStateException("No game to replay");
+        }
+        history.seek(step);
+        board.set(start);
+        for (int i = 0; i != step; i++) {
+            board.move(board.get(neighbours[board.getFree() * 4 + history.get(i)]));
+        }
+        steps = step;
+        if (session != 0) {
+            // the session goes on from an arrangement its inputs do not
+            // lead to...
+            endSession(SessionLog.INTERRUPTED);
+            beginSession();
+        }
+        if (listener != null) {
+            listener.gameReplayed(this);
+        }
+        if (state == STATE_PLAYING && isSuccessful()) {
+            endGame();
+        }
+    }
+
+    /**
+     * Writes the game to the specified buffer, at its position: the game's
+     * dimensions, missing tile index, state and step count, the packed
+     * arrangement the game has started from and the move history, so that
+     * {@link #restore(ByteBuffer)} brings the game back exactly. Outside a
+     * game, or if so requested, the current arrangement is written with an
+     * empty history instead.
+     *
+     * @param buffer the buffer
+     * @param withHistory true to write the move history, false to write the
+     * current arrangement only
+     *
+     * @throws IllegalStateException if the board data have never been reset
+     * @throws java.nio.BufferOverflowException if the buffer has too few
+     * bytes remaining, in which case the buffer's contents past its position
+     * are unspecified
+     */
+    public void save(ByteBuffer buffer, boolean withHistory) {
+        if (board == null) {
+            throw new IllegalStateException("No board to save");
+        }
+        withHistory = withHistory && start != null && state != STATE_WELCOME;
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        buffer.putShort((short) missingTileIndex);
+        buffer.put((byte) state);
+        buffer.put((byte) 0);
+        buffer.putInt(steps);
+        if (withHistory) {
+            start.writeTo(buffer);
+            history.write(buffer);
+        }
+        else {
+            board.writeTo(buffer);
+            buffer.putInt(0);
+            buffer.putInt(0);
+        }
+    }
+
+    /**
+     * Restores a game written by {@link #save(ByteBuffer, boolean)} from the
+     * specified buffer, at its position. The arrangement is rebuilt by
+     * replaying the history from the arrangement the game has started from,
+     * and the game's state and step count are restored as they were, no
+     * shuffling taking place. The game is left unchanged should the buffer
+     * not hold a well-formed game of the same dimensions.
+     *
+     * @param buffer the buffer
+     *
+     * @return true if the game has been restored, false if the saved game's
+     * dimensions differ from the game's
+     *
+     * @throws IllegalArgumentException if the buffer does not hold a
+     * well-formed game
+     */
+    public boolean restore(ByteBuffer buffer) {
+        int size = width * height;
+        if (buffer.remaining() < 12) {
+            throw new IllegalArgumentException("Truncated game");
+        }
+        if (buffer.getShort() != width || buffer.getShort() != height) {
+            return false;
+        }
+        int newMissingTileIndex = buffer.getShort();
+        int newState = buffer.get();
+        buffer.get();
+        int newSteps = buffer.getInt();
+        if (newMissingTileIndex < 0 || newMissingTileIndex >= size || newState < STATE_WELCOME || newState > STATE_OVER || newSteps < 0) {
+            throw new IllegalArgumentException("Invalid game header");
+        }
+
+        // rebuild the game aside, so that the game is only changed once the
+        // whole of it has been read...
+        Board newStart = new Board(width, height, newMissingTileIndex);
+        if (buffer.remaining() < newStart.getPackedSize()) {
+            throw new IllegalArgumentException("Truncated arrangement");
+        }
+        newStart.readFrom(buffer, newMissingTileIndex);
+        MoveHistory newHistory = new MoveHistory();
+        newHistory.read(buffer);
+        Board newBoard = play(newStart, newHistory);
+
+        missingTileIndex = newMissingTileIndex;
+        if (board == null) {
+            board = newBoard;
+        }
+        else {
+            board.set(newBoard);
+        }
+        start = newStart;
+        history = newHistory;
+        endSession(SessionLog.INTERRUPTED);
+        steps = newSteps;
+        if (newState == STATE_PLAYING) {
+            beginSession();
+        }
+        trace.record(Trace.RESET, missingTileIndex, 1);
+        setState(newState);
+        if (listener != null) {
+            listener.gameRestored(this);
+        }
+        return true;
+    }
+
+    /**
+     * Applies the moves of the specified history up to its position to a
+     * copy of the specified arrangement.
+     *
+     * @param origin the arrangement to start from
+     * @param moves the move history
+     *
+     * @return the arrangement reached, as a new Board
+     *
+     * @throws IllegalArgumentException if the history holds a move off the
+     * board
+     */
+    private Board play(Board origin, MoveHistory moves) {
+        Board b = new Board(origin);
+        for (int i = 0; i != moves.getPosition(); i++) {
+            int cell = neighbours[b.getFree() * 4 + moves.get(i)];
+            if (cell == -1) {
+                throw new IllegalArgumentException("Invalid move " + i);
+            }
+            b.move(b.get(cell));
+        }
+        return b;
+    }
+
+    /**
+     * Returns the direction leading from a cell to an adjacent one.
+     *
+     * @param from the cell to start from
+     * @param to the adjacent cell
+     *
+     * @return one of {@link Board#UP}, {@link Board#DOWN}, {@link Board#LEFT}
+     * and {@link Board#RIGHT}, -1 if the cells are not adjacent
+     */
+    private int direction(int from, int to) {
+        for (int d = 0; d != 4; d++) {
+            if (neighbours[from * 4 + d] == to) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the current data represent an ordered arrangement of tiles.
+     * The board keeps count of misplaced tiles as moves are made, hence this
+     * takes constant time.
+     *
+     * @return true if the current data represent an ordered arrangement of
+     * tiles (i.e., a solved game), false otherwise
+     */
+    public boolean isSuccessful() {
+        return board.isSolved();
+    }
+
+    /**
+     * Returns the index of the free tile if it is adjacent to the specified
+     * tile.
+     *
+     * @param index the index of the tile to locate the free tile with respect
+     * to
+     *
+     * @return the index of the free tile if it is adjacent to the specified
+     * tile, -1 otherwise
+     */
+    public int checkFree(int index) {
+        return board.freeNeighbour(index);
+    }
+
+    /**
+     * Handler for tile and button clicks. Manages the game according to current
+     * state and tile or button clicked.
+     *
+     * @param index the index of the button or tile the user has clicked on
+     */
+    public void process(int index) {
+
+        trace.record(Trace.PROCESS, index, state);
+        if (session != 0) {
+            log.input(session, index);
+        }
+
+        switch (index) {
+
+            case BUTTON_MAIN:
+                switch (state) {
+                    case STATE_WELCOME:
+                        // starting a new game...
+                        startGame();
+                        break;
+                    case STATE_PLAYING:
+                        // aborting a game...
+                        // todo: ask player to abandon current game...
+                        abortGame();
+                        break;
+                    case STATE_OVER:
+                        // resetting the game...
+                        resetGame();
+                        break;
+                }
+                break;
+
+            case BUTTON_HELP:
+                // help is up to the presentation...
+                break;
+
+            case BUTTON_SOLVE:
+                // so is solving, which only makes sense while playing...
+                if (state == STATE_PLAYING && listener != null) {
+                    listener.solveRequested(this);
+                }
+                break;
+
+            case BUTTON_UNDO:
+            case BUTTON_REDO:
+                // moves may be undone and redone while playing, the solved
+                // arrangement ending the game as usual...
+                if (state == STATE_PLAYING) {
+                    if (index == BUTTON_UNDO) {
+                        historyAction(history.undo(), -1);
+                    }
+                    else {
+                        historyAction(history.redo(), 1);
+                    }
+                    if (isSuccessful()) {
+                        endGame();
+                    }
+                }
+                break;
+
+            default:
+                // tiles are only active while playing, and unknown ids are
+                // ignored...
+                if (index >= 0 && index < width * height && state == STATE_PLAYING) {
+                    playerAction(index);
+                    if (isSuccessful()) {
+                        endGame();
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Creates a solver for the current data. The solver is guided by the
+     * pattern databases found in the directory specified via
+     * {@link #setPatternDatabases(String)}, if any, and by the Manhattan
+     * distance and linear conflicts otherwise. Pattern databases are
+     * memory-mapped once and shared by all games in the same JVM. Should
+     * they be missing or unusable, the fallback is recorded as a
+     * {@link Trace#HEURISTIC} event.
+     *
+     * @return the solver, as a Solver
+     */
+    public Solver createSolver() {
+        if (patternDatabases != null) {
+            try {
+                Heuristic heuristic = PatternDatabaseHeuristic.load(new File(patternDatabases), width, height, missingTileIndex);
+                if (heuristic != null) {
+                    return new Solver(width, height, missingTileIndex, heuristic);
+                }
+                trace.record(Trace.HEURISTIC, missingTileIndex, 1);
+            }
+            catch (IOException e) {
+                // fall back to the default heuristic, which may well be too
+                // weak for large boards...
+                trace.record(Trace.HEURISTIC, missingTileIndex, 0);
+            }
+        }
+        return new Solver(width, height, missingTileIndex);
+    }
+}
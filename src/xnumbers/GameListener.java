@@ -0,0 +1,95 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * <p>The interface to be implemented by presentations of a {@link Game}.</p>
+ *
+ * <p>Listeners are notified after the game's data and state have been
+ * updated, hence may query the game for them.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public interface GameListener {
+
+    /**
+     * Invoked when a new game has been started on a freshly shuffled board.
+     *
+     * @param game the game
+     */
+    void gameStarted(Game game);
+
+    /**
+     * Invoked when the current game has been aborted by the player.
+     *
+     * @param game the game
+     */
+    void gameAborted(Game game);
+
+    /**
+     * Invoked when the current game has been solved. The game's state tells
+     * whether a restart is offered.
+     *
+     * @param game the game
+     */
+    void gameEnded(Game game);
+
+    /**
+     * Invoked when the game has been reset to its ordered arrangement.
+     *
+     * @param game the game
+     */
+    void gameReset(Game game);
+
+    /**
+     * Invoked when the player has moved a tile.
+     *
+     * @param game the game
+     * @param tileIndex the index of the tile that has been moved
+     * @param from the cell the tile has been moved from, which is now free
+     */
+    void tileMoved(Game game, int tileIndex, int from);
+
+    /**
+     * Invoked when the board has been replayed to a step of the current
+     * game's history, hence may differ from the previous one in any number
+     * of cells.
+     *
+     * @param game the game
+     */
+    void gameReplayed(Game game);
+
+    /**
+     * Invoked when a saved game has been restored, hence the game's data and
+     * state may differ from the previous ones in any way.
+     *
+     * @param game the game
+     */
+    void gameRestored(Game game);
+
+    /**
+     * Invoked when the player has asked for the current game to be solved
+     * automatically.
+     *
+     * @param game the game
+     */
+    void solveRequested(Game game);
+}
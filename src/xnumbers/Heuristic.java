@@ -0,0 +1,61 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * <p>An admissible, incrementally-maintained estimate of the number of moves
+ * required to solve a board.</p>
+ *
+ * <p>Implementations are bound to a board of a specific width, height and
+ * missing tile index. A board is described by two arrays: the cells array,
+ * holding the index of the tile at each cell or -1 for the free cell, and the
+ * positions array, holding the cell of each tile, the entry of the missing
+ * tile holding the free cell. Both arrays are owned by the caller, which
+ * updates them before notifying the heuristic of a move.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public interface Heuristic {
+
+    /**
+     * Binds the heuristic to the specified board and computes a full
+     * estimate from scratch.
+     *
+     * @param cells the cells array, as an int[]
+     * @param positions the positions array, as an int[]
+     *
+     * @return the estimate for the board, as an int
+     */
+    int initialize(int[] cells, int[] positions);
+
+    /**
+     * Updates the estimate after a tile has been moved. The cells and
+     * positions arrays passed to {@link #initialize(int[], int[])} must
+     * already reflect the move.
+     *
+     * @param tile the index of the tile that has been moved
+     * @param from the cell the tile has been moved from
+     * @param to the cell the tile has been moved to
+     *
+     * @return the estimate for the board after the move, as an int
+     */
+    int update(int tile, int from, int to);
+}
@@ -0,0 +1,179 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Computes hints, i.e. the first move of an optimal solution, and whole
+ * solutions off the browser's event thread.</p>
+ *
+ * <p>Hints are computed by a single daemon worker thread shared by all games
+ * in the JVM, on a copy of the board taken when the hint is requested. A new
+ * request supersedes the pending one, and cancelling a request, e.g. when the
+ * player moves, stops its search. Completed hints are published lock-free and
+ * picked up by {@link #poll()}, so that the event thread never waits for a
+ * search.</p>
+ *
+ * <p>Requesting, cancelling and polling are meant to be done from the
+ * browser's event delivery only.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class HintService {
+
+    /**
+     * Poll result denoting that no hint is available.
+     */
+    public static final int NONE = -2;
+
+    /**
+     * A completed request.
+     */
+    private static final class Result {
+        final int id;
+        final int[] solution;
+        Result(int id, int[] solution) {
+            this.id = id;
+            this.solution = solution;
+        }
+    }
+
+    /**
+     * The worker computing hints for all games.
+     */
+    private static final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+        @Override public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "XNumbers hints");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+
+    /**
+     * The id of the pending request, 0 if none.
+     */
+    private int request = 0;
+
+    /**
+     * The id of the last request issued.
+     */
+    private int lastRequest = 0;
+
+    /**
+     * The solver of the pending request, null if none.
+     */
+    private Solver solver = null;
+
+    /**
+     * The last completed request, null if none.
+     */
+    private final AtomicReference<Result> completed = new AtomicReference<Result>();
+
+    /**
+     * The solution of the last request polled, null if none.
+     */
+    private int[] solution = null;
+
+    /**
+     * Requests a hint for the current board of the specified game,
+     * superseding the pending request, if any.
+     *
+     * @param game the game
+     */
+    public void request(Game game) {
+        cancel();
+        final int[] board = game.getBoard().toArray(null);
+        final Solver s = game.createSolver();
+        final int id = ++lastRequest != 0 ? lastRequest : ++lastRequest;
+        request = id;
+        solver = s;
+        worker.execute(new Runnable() {
+
+            @Override public void run() {
+                if (!s.isCancelled()) {
+                    int[] moves = s.solve(board);
+                    if (!s.isCancelled()) {
+                        completed.set(new Result(id, moves));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels the pending request, if any.
+     */
+    public void cancel() {
+        if (solver != null) {
+            solver.cancel();
+            solver = null;
+        }
+        request = 0;
+    }
+
+    /**
+     * Checks whether a request is pending.
+     *
+     * @return true if a request is pending, false otherwise
+     */
+    public boolean isPending() {
+        return request != 0;
+    }
+
+    /**
+     * Returns the hint of the pending request, if completed. The request is
+     * no longer pending once its hint has been returned, and its whole
+     * solution is available via {@link #getSolution()}.
+     *
+     * @return the index of the tile to move, -1 if the board is already
+     * solved or no hint could be computed in time, {@link #NONE} if no hint
+     * is available
+     */
+    public int poll() {
+        if (request == 0) {
+            return NONE;
+        }
+        Result r = completed.get();
+        if (r == null || r.id != request) {
+            return NONE;
+        }
+        request = 0;
+        solver = null;
+        solution = r.solution;
+        return solution != null && solution.length != 0 ? solution[0] : -1;
+    }
+
+    /**
+     * Returns the whole solution of the last request polled.
+     *
+     * @return the indices of the tiles to move in order, as an int[], or null
+     * if none could be computed in time
+     */
+    public int[] getSolution() {
+        return solution;
+    }
+}
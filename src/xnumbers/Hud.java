@@ -0,0 +1,187 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import org.web3d.x3d.sai.MFString;
+
+/**
+ * <p>The game's heads-up display, i.e. the texts of its titles and buttons.</p>
+ *
+ * <p>Each text is attached once, by its resolved {@code string} field, and is
+ * then addressed by slot. The last text written to each slot is remembered,
+ * and a text is only queued for writing when it differs from the one
+ * displayed. Step and game time labels are formatted once per value and
+ * reused, so that refreshing an unchanged display neither allocates nor
+ * generates scene events.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class Hud {
+
+    /**
+     * Largest value whose labels are cached.
+     */
+    public static final int MAX_CACHED_LABEL = 65535;
+
+    /**
+     * Label kind: step count.
+     */
+    private static final int STEPS = 0;
+
+    /**
+     * Label kind: game time, in seconds.
+     */
+    private static final int GAME_TIME = 1;
+
+    /**
+     * Label prefixes, by kind.
+     */
+    private static final String[] PREFIXES = new String[]{"Steps: ", "Game time: "};
+
+    /**
+     * Label suffixes, by kind.
+     */
+    private static final String[] SUFFIXES = new String[]{"", " secs"};
+
+    /**
+     * The queue to write texts to.
+     */
+    private final UpdateQueue updates;
+
+    /**
+     * The string fields, by slot.
+     */
+    private MFString[] fields = new MFString[0];
+
+    /**
+     * The displayed texts, by slot.
+     */
+    private String[] texts = new String[0];
+
+    /**
+     * Formatted labels, by kind and value.
+     */
+    private final String[][] labels = new String[][]{new String[16], new String[16]};
+
+    /**
+     * Creates an empty display writing to the specified queue.
+     *
+     * @param updates the queue
+     */
+    public Hud(UpdateQueue updates) {
+        this.updates = updates;
+    }
+
+    /**
+     * Attaches a text to the next slot.
+     *
+     * @param field the text's string field
+     * @param text the text currently displayed by the field
+     *
+     * @return the slot, as an int
+     */
+    public int attach(MFString field, String text) {
+        int slot = fields.length;
+        MFString[] f = new MFString[slot + 1];
+        String[] t = new String[slot + 1];
+        System.arraycopy(fields, 0, f, 0, slot);
+        System.arraycopy(texts, 0, t, 0, slot);
+        f[slot] = field;
+        t[slot] = text;
+        fields = f;
+        texts = t;
+        return slot;
+    }
+
+    /**
+     * Returns the text displayed in a slot.
+     *
+     * @param slot the slot
+     *
+     * @return the text, as a String
+     */
+    public String getText(int slot) {
+        return texts[slot];
+    }
+
+    /**
+     * Displays a text in a slot, unless already displayed.
+     *
+     * @param slot the slot
+     * @param text the text
+     */
+    public void setText(int slot, String text) {
+        String displayed = texts[slot];
+        if (displayed == text || displayed.equals(text)) {
+            return;
+        }
+        texts[slot] = text;
+        updates.setValue(fields[slot], text);
+    }
+
+    /**
+     * Displays a step count in a slot, unless already displayed.
+     *
+     * @param slot the slot
+     * @param steps the step count
+     */
+    public void setSteps(int slot, int steps) {
+        setText(slot, label(STEPS, steps));
+    }
+
+    /**
+     * Displays a game time in a slot, unless already displayed.
+     *
+     * @param slot the slot
+     * @param seconds the game time, in seconds
+     */
+    public void setGameTime(int slot, int seconds) {
+        setText(slot, label(GAME_TIME, seconds));
+    }
+
+    /**
+     * Returns the label of the specified kind for the specified value,
+     * formatting it unless cached.
+     *
+     * @param kind the label's kind
+     * @param value the value
+     *
+     * @return the label, as a String
+     */
+    private String label(int kind, int value) {
+        if (value < 0 || value > MAX_CACHED_LABEL) {
+            return PREFIXES[kind] + value + SUFFIXES[kind];
+        }
+        String[] cache = labels[kind];
+        if (value >= cache.length) {
+            String[] c = new String[Math.min(Math.max(value + 1, cache.length * 2), MAX_CACHED_LABEL + 1)];
+            System.arraycopy(cache, 0, c, 0, cache.length);
+            cache = c;
+            labels[kind] = c;
+        }
+        String label = cache[value];
+        if (label == null) {
+            label = PREFIXES[kind] + value + SUFFIXES[kind];
+            cache[value] = label;
+        }
+        return label;
+    }
+}
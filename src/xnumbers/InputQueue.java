@@ -0,0 +1,216 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * <p>A bounded queue of button and tile clicks, drained into a
+ * {@link Game} once per event cascade.</p>
+ *
+ * <p>Clients scripting the "click" field may send many clicks per frame,
+ * each of which would otherwise be processed as it arrives. Queued clicks
+ * are instead processed together by {@link #drain()}, typically at the end
+ * of the cascade, and redundant ones are collapsed on the way:</p>
+ *
+ * <ul>
+ * <li>a toggle button, i.e. Start/Abort or Solve, clicked again before its
+ * click has been processed counts once, so that bursts of clicks do not
+ * toggle the game back and forth, whereas every Undo and Redo click
+ * counts;</li>
+ * <li>clicks on tiles that cannot move when their turn comes, or that come
+ * outside a game, are dropped rather than processed.</li>
+ * </ul>
+ *
+ * <p>The queue holds up to a fixed number of clicks in a ring buffer, so
+ * that the work done per cascade is bounded, and applies its
+ * {@link OverflowPolicy} to clicks arriving while full. Queues are meant to
+ * be offered to and drained from the browser's event delivery only, and are
+ * not thread-safe.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class InputQueue {
+
+    /**
+     * Default number of clicks held.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Available overflow policies, i.e. what becomes of a click arriving
+     * while the queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * Drop the arriving click.
+         */
+        REJECT,
+
+        /**
+         * Drop the oldest queued click to make room for the arriving one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Process all queued clicks at once to make room for the arriving
+         * one, i.e. hold the client up rather than lose input.
+         */
+        DRAIN
+    };
+
+    /**
+     * The game clicks are processed by.
+     */
+    private final Game game;
+
+    /**
+     * The queued clicks, in a ring buffer.
+     */
+    private final int[] inputs;
+
+    /**
+     * The overflow policy.
+     */
+    private final OverflowPolicy policy;
+
+    /**
+     * The index of the oldest queued click.
+     */
+    private int head = 0;
+
+    /**
+     * The number of queued clicks.
+     */
+    private int count = 0;
+
+    /**
+     * The metrics collapsed and dropped clicks are counted in, null if none.
+     */
+    private Metrics metrics = null;
+
+    /**
+     * Creates a queue feeding the specified game.
+     *
+     * @param game the game
+     * @param capacity the number of clicks held
+     * @param policy the overflow policy
+     */
+    public InputQueue(Game game, int capacity, OverflowPolicy policy) {
+        this.game = game;
+        this.inputs = new int[Math.max(capacity, 1)];
+        this.policy = policy;
+    }
+
+    /**
+     * Sets the metrics to count collapsed and dropped clicks in.
+     *
+     * @param metrics the metrics, null if none
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the number of queued clicks.
+     *
+     * @return the count, as an int
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Queues the specified click, unless it is a toggle button clicked again
+     * before its click has been processed. Applies the overflow policy if
+     * full.
+     *
+     * @param index the index of the button or tile clicked
+     */
+    public void offer(int index) {
+        if ((index == Game.BUTTON_MAIN || index == Game.BUTTON_SOLVE) && count != 0 && inputs[(head + count - 1) % inputs.length] == index) {
+            collapsed();
+            return;
+        }
+        if (count == inputs.length) {
+            switch (policy) {
+                case DROP_OLDEST:
+                    head = (head + 1) % inputs.length;
+                    count--;
+                    dropped();
+                    break;
+                case DRAIN:
+                    drain();
+                    break;
+                case REJECT:
+                default:
+                    dropped();
+                    return;
+            }
+        }
+        inputs[(head + count) % inputs.length] = index;
+        count++;
+    }
+
+    /**
+     * Processes all queued clicks in order, dropping clicks on tiles that
+     * cannot be moved.
+     */
+    public void drain() {
+        while (count != 0) {
+            int index = inputs[head];
+            head = (head + 1) % inputs.length;
+            count--;
+            // tiles that cannot move are ignored by the game anyway, but
+            // need not be processed at all...
+            if (index >= 0 && (game.getState() != Game.STATE_PLAYING || !game.getBoard().canMove(index))) {
+                collapsed();
+                continue;
+            }
+            game.process(index);
+        }
+    }
+
+    /**
+     * Discards all queued clicks.
+     */
+    public void clear() {
+        head = 0;
+        count = 0;
+    }
+
+    /**
+     * Counts a click collapsed as redundant.
+     */
+    private void collapsed() {
+        if (metrics != null) {
+            metrics.inputCollapsed();
+        }
+    }
+
+    /**
+     * Counts a click dropped for lack of room.
+     */
+    private void dropped() {
+        if (metrics != null) {
+            metrics.inputDropped();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.Arrays;
+
+/**
+ * <p>A texture holding the labels of all tiles of a board, drawn with a tiny
+ * built-in bitmap font, so that all tiles may share a single texture.</p>
+ *
+ * <p>Each label occupies a square cell of the texture, cells being laid out
+ * row by row from the bottom left. Pixels are given bottom row first, as
+ * expected by PixelTexture, as 0xRRGGBB ints.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class LabelAtlas {
+
+    /**
+     * Glyph width, in pixels.
+     */
+    public static final int GLYPH_WIDTH = 3;
+
+    /**
+     * Glyph height, in pixels.
+     */
+    public static final int GLYPH_HEIGHT = 5;
+
+    /**
+     * Digit glyphs, one bit per pixel, top row first, leftmost pixel in the
+     * most significant bit of each row.
+     */
+    private static final int[] GLYPHS = new int[]{
+        0x7B6F, 0x2C97, 0x73E7, 0x73CF, 0x5BC9, 0x79CF, 0x79EF, 0x7249, 0x7BEF, 0x7BCF
+    };
+
+    /**
+     * The number of labels.
+     */
+    private final int count;
+
+    /**
+     * The size of a label cell, in pixels.
+     */
+    private final int cellSize;
+
+    /**
+     * The number of label cells per row.
+     */
+    private final int columns;
+
+    /**
+     * The texture's width, in pixels.
+     */
+    private final int width;
+
+    /**
+     * The texture's height, in pixels.
+     */
+    private final int height;
+
+    /**
+     * The texture's pixels.
+     */
+    private final int[] pixels;
+
+    /**
+     * Creates an atlas of the labels "1" to the specified number.
+     *
+     * @param count the number of labels
+     * @param background the background color, as 0xRRGGBB
+     * @param foreground the text color, as 0xRRGGBB
+     */
+    public LabelAtlas(int count, int background, int foreground) {
+        this.count = count;
+        int digits = String.valueOf(count).length();
+        cellSize = digits * (GLYPH_WIDTH + 1) + 1;
+        columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (count + columns - 1) / columns;
+        width = columns * cellSize;
+        height = rows * cellSize;
+        pixels = new int[width * height];
+        Arrays.fill(pixels, background);
+        for (int i = 0; i != count; i++) {
+            draw(i, String.valueOf(i + 1), foreground);
+        }
+    }
+
+    /**
+     * Returns the number of labels.
+     *
+     * @return the number of labels, as an int
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the texture's width.
+     *
+     * @return the width in pixels, as an int
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the texture's height.
+     *
+     * @return the height in pixels, as an int
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the texture's pixels. The array is not copied and must not be
+     * modified.
+     *
+     * @return the pixels, bottom row first, as an int[]
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Returns the texture coordinates of the corners of each label cell, in
+     * the order lower left, lower right, upper right, upper left.
+     *
+     * @return the coordinates, flattened into eight floats per label, as a
+     * float[]
+     */
+    public float[] getTexCoords() {
+        float[] coords = new float[count * 8];
+        for (int i = 0; i != count; i++) {
+            float s0 = (float) (i % columns) * cellSize / width;
+            float s1 = (float) (i % columns + 1) * cellSize / width;
+            float t0 = (float) (i / columns) * cellSize / height;
+            float t1 = (float) (i / columns + 1) * cellSize / height;
+            int k = i * 8;
+            coords[k] = s0;
+            coords[k + 1] = t0;
+            coords[k + 2] = s1;
+            coords[k + 3] = t0;
+            coords[k + 4] = s1;
+            coords[k + 5] = t1;
+            coords[k + 6] = s0;
+            coords[k + 7] = t1;
+        }
+        return coords;
+    }
+
+    /**
+     * Draws a label centered in its cell.
+     *
+     * @param index the index of the label's cell
+     * @param label the label, consisting of digits only
+     * @param color the text color, as 0xRRGGBB
+     */
+    private void draw(int index, String label, int color) {
+        int left = (index % columns) * cellSize + (cellSize - (label.length() * (GLYPH_WIDTH + 1) - 1)) / 2;
+        // rows are counted from the bottom, hence the top of the cell is the
+        // last row...
+        int top = (index / columns) * cellSize + cellSize - 1 - (cellSize - GLYPH_HEIGHT) / 2;
+        for (int c = 0; c != label.length(); c++) {
+            int glyph = GLYPHS[label.charAt(c) - '0'];
+            for (int r = 0; r != GLYPH_HEIGHT; r++) {
+                for (int x = 0; x != GLYPH_WIDTH; x++) {
+                    int bit = (GLYPH_HEIGHT - 1 - r) * GLYPH_WIDTH + (GLYPH_WIDTH - 1 - x);
+                    if ((glyph >>> bit & 1) != 0) {
+                        pixels[(top - r) * width + left + c * (GLYPH_WIDTH + 1) + x] = color;
+                    }
+                }
+            }
+        }
+    }
+}
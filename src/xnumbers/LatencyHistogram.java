@@ -0,0 +1,152 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A lock-free histogram of latencies, in nanoseconds.</p>
+ *
+ * <p>Latencies are counted in 64 buckets of powers of two, bucket i holding
+ * latencies of at least 2^(i-1) and less than 2^i nanoseconds, bucket 0
+ * holding zero latencies. Alongside the buckets, the histogram keeps the
+ * number, sum and maximum of all latencies. Recording a latency takes a few
+ * atomic updates and allocates nothing, hence may be done on every event
+ * from any thread; percentiles are only resolved to the upper bound of their
+ * bucket, i.e. within a factor of two.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of buckets.
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * The bucket counts.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Number of latencies recorded.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Sum of latencies recorded.
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Largest latency recorded.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the specified latency.
+     *
+     * @param nanos the latency, in nanoseconds; negative latencies, e.g. due
+     * to clock adjustments, count as zero
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of latencies recorded.
+     *
+     * @return the count, as a long
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean latency.
+     *
+     * @return the mean in nanoseconds, 0 if none has been recorded, as a
+     * long
+     */
+    public long getMean() {
+        long c = count.get();
+        return c != 0 ? sum.get() / c : 0;
+    }
+
+    /**
+     * Returns the largest latency.
+     *
+     * @return the maximum in nanoseconds, as a long
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns an upper bound of the specified percentile of latencies, i.e.
+     * the upper bound of the bucket holding it.
+     *
+     * @param percentile the percentile, between 0 and 100
+     *
+     * @return the bound in nanoseconds, 0 if none has been recorded, as a
+     * long
+     */
+    public long getPercentile(double percentile) {
+        long[] b = getBuckets();
+        long total = 0;
+        for (int i = 0; i != BUCKETS; i++) {
+            total += b[i];
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i != BUCKETS; i++) {
+            seen += b[i];
+            if (seen >= rank && seen != 0) {
+                return i == 0 ? 0 : (1L << i) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns a snapshot of the bucket counts.
+     *
+     * @return the counts, as a long[] of 64 buckets
+     */
+    public long[] getBuckets() {
+        long[] b = new long[BUCKETS];
+        for (int i = 0; i != BUCKETS; i++) {
+            b[i] = buckets.get(i);
+        }
+        return b;
+    }
+}
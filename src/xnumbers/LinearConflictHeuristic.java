@@ -0,0 +1,270 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * <p>The Manhattan distance heuristic enhanced with linear conflicts.</p>
+ *
+ * <p>Two tiles are in linear conflict when both are in their goal row (or
+ * column) but in reverse order, in which case one of them has to leave the
+ * line and return to it. For each line, the minimum number of tiles that have
+ * to leave it is the number of tiles in their goal line minus the length of
+ * the longest increasing subsequence of their goal positions, each such tile
+ * adding two moves to the Manhattan distance.</p>
+ *
+ * <p>Manhattan distance is updated in constant time per move. A horizontal
+ * move leaves all rows unaffected and only changes the two columns the tile
+ * has left and entered, and vice versa, so only two lines are re-evaluated
+ * per move.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class LinearConflictHeuristic implements Heuristic {
+
+    /**
+     * The board's width.
+     */
+    private final int width;
+
+    /**
+     * The board's height.
+     */
+    private final int height;
+
+    /**
+     * The missing tile index.
+     */
+    private final int missingTileIndex;
+
+    /**
+     * The row of each cell.
+     */
+    private final int[] rowOf;
+
+    /**
+     * The column of each cell.
+     */
+    private final int[] columnOf;
+
+    /**
+     * The current linear conflict contribution of each row.
+     */
+    private final int[] rowConflicts;
+
+    /**
+     * The current linear conflict contribution of each column.
+     */
+    private final int[] columnConflicts;
+
+    /**
+     * Scratch space for longest increasing subsequence evaluation.
+     */
+    private final int[] tails;
+
+    /**
+     * The bound cells array.
+     */
+    private int[] cells = null;
+
+    /**
+     * The current Manhattan distance.
+     */
+    private int manhattan = 0;
+
+    /**
+     * The current sum of linear conflict contributions over all lines.
+     */
+    private int conflicts = 0;
+
+    /**
+     * Creates a heuristic for boards of the specified dimensions.
+     *
+     * @param width the board's width
+     * @param height the board's height
+     * @param missingTileIndex the missing tile index
+     */
+    public LinearConflictHeuristic(int width, int height, int missingTileIndex) {
+        this.width = width;
+        this.height = height;
+        this.missingTileIndex = missingTileIndex;
+        int size = width * height;
+        rowOf = new int[size];
+        columnOf = new int[size];
+        for (int i = 0; i != size; i++) {
+            rowOf[i] = i / width;
+            columnOf[i] = i % width;
+        }
+        rowConflicts = new int[height];
+        columnConflicts = new int[width];
+        tails = new int[Math.max(width, height)];
+    }
+
+    /**
+     *
+     */
+    @Override public int initialize(int[] cells, int[] positions) {
+        this.cells = cells;
+        manhattan = 0;
+        for (int t = 0; t != cells.length; t++) {
+            if (t != missingTileIndex) {
+                manhattan += distance(positions[t], t);
+            }
+        }
+        conflicts = 0;
+        for (int r = 0; r != height; r++) {
+            rowConflicts[r] = evaluateRow(r);
+            conflicts += rowConflicts[r];
+        }
+        for (int c = 0; c != width; c++) {
+            columnConflicts[c] = evaluateColumn(c);
+            conflicts += columnConflicts[c];
+        }
+        return manhattan + conflicts;
+    }
+
+    /**
+     *
+     */
+    @Override public int update(int tile, int from, int to) {
+        manhattan += distance(to, tile) - distance(from, tile);
+        if (rowOf[from] == rowOf[to]) {
+            // a horizontal move, only the columns involved are affected...
+            updateColumn(columnOf[from]);
+            updateColumn(columnOf[to]);
+        }
+        else {
+            // a vertical move, only the rows involved are affected...
+            updateRow(rowOf[from]);
+            updateRow(rowOf[to]);
+        }
+        return manhattan + conflicts;
+    }
+
+    /**
+     * Returns the current Manhattan distance component of the estimate.
+     *
+     * @return the current Manhattan distance, as an int
+     */
+    public int getManhattan() {
+        return manhattan;
+    }
+
+    /**
+     * Re-evaluates the contribution of the specified row.
+     *
+     * @param r the row
+     */
+    private void updateRow(int r) {
+        int value = evaluateRow(r);
+        conflicts += value - rowConflicts[r];
+        rowConflicts[r] = value;
+    }
+
+    /**
+     * Re-evaluates the contribution of the specified column.
+     *
+     * @param c the column
+     */
+    private void updateColumn(int c) {
+        int value = evaluateColumn(c);
+        conflicts += value - columnConflicts[c];
+        columnConflicts[c] = value;
+    }
+
+    /**
+     * Evaluates the linear conflict contribution of the specified row.
+     *
+     * @param r the row
+     *
+     * @return the contribution, as an int
+     */
+    private int evaluateRow(int r) {
+        int count = 0;
+        int length = 0;
+        int cell = r * width;
+        for (int c = 0; c != width; c++, cell++) {
+            int tile = cells[cell];
+            if (tile != -1 && rowOf[tile] == r) {
+                count++;
+                length = extend(length, columnOf[tile]);
+            }
+        }
+        return 2 * (count - length);
+    }
+
+    /**
+     * Evaluates the linear conflict contribution of the specified column.
+     *
+     * @param c the column
+     *
+     * @return the contribution, as an int
+     */
+    private int evaluateColumn(int c) {
+        int count = 0;
+        int length = 0;
+        int cell = c;
+        for (int r = 0; r != height; r++, cell += width) {
+            int tile = cells[cell];
+            if (tile != -1 && columnOf[tile] == c) {
+                count++;
+                length = extend(length, rowOf[tile]);
+            }
+        }
+        return 2 * (count - length);
+    }
+
+    /**
+     * Extends the longest increasing subsequence held in the scratch space by
+     * the specified value (patience sorting).
+     *
+     * @param length the current length of the scratch space
+     * @param value the value to extend by
+     *
+     * @return the new length of the scratch space, as an int
+     */
+    private int extend(int length, int value) {
+        int lo = 0;
+        int hi = length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tails[mid] < value) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        tails[lo] = value;
+        return lo == length ? length + 1 : length;
+    }
+
+    /**
+     * Returns the Manhattan distance between two cells.
+     *
+     * @param a the first cell
+     * @param b the second cell
+     *
+     * @return the distance, as an int
+     */
+    private int distance(int a, int b) {
+        return Math.abs(rowOf[a] - rowOf[b]) + Math.abs(columnOf[a] - columnOf[b]);
+    }
+}
@@ -0,0 +1,108 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.web3d.x3d.sai.X3DExecutionContext;
+
+/**
+ * <p>The registry of materials, appearances and other shared nodes, by
+ * execution context.</p>
+ *
+ * <p>All XNumbers games in an execution context acquire the same
+ * {@link SharedNodes}, hence each material is created by the first game to
+ * initialize and reused by the rest, rather than recreated by every game.
+ * Shared nodes are reference-counted and discarded once released by the last
+ * game in the execution context.</p>
+ *
+ * <p>The registry is thread-safe, and looking up the shared nodes of an
+ * execution context does not lock. Games initializing concurrently acquire
+ * the same shared nodes, which create each node once.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public final class MaterialRegistry {
+
+    /**
+     * Registered shared nodes and the number of games holding them.
+     */
+    private static final class Entry {
+        final SharedNodes nodes = new SharedNodes();
+        final AtomicInteger references = new AtomicInteger(1);
+    }
+
+    /**
+     * Entries, by execution context.
+     */
+    private static final ConcurrentHashMap<X3DExecutionContext, Entry> entries = new ConcurrentHashMap<X3DExecutionContext, Entry>();
+
+    /**
+     * Not instantiable.
+     */
+    private MaterialRegistry() {
+    }
+
+    /**
+     * Acquires the shared nodes of the specified execution context,
+     * registering new ones if needed. Each acquisition must be matched by a
+     * {@link #release(X3DExecutionContext)}.
+     *
+     * @param scene the execution context
+     *
+     * @return the shared nodes, as SharedNodes
+     */
+    public static SharedNodes acquire(X3DExecutionContext scene) {
+        while (true) {
+            Entry e = entries.get(scene);
+            if (e == null) {
+                Entry created = new Entry();
+                e = entries.putIfAbsent(scene, created);
+                if (e == null) {
+                    return created.nodes;
+                }
+            }
+            // an entry released by its last holder meanwhile is being
+            // removed, hence must not be revived...
+            int references = e.references.get();
+            if (references == 0) {
+                entries.remove(scene, e);
+            }
+            else if (e.references.compareAndSet(references, references + 1)) {
+                return e.nodes;
+            }
+        }
+    }
+
+    /**
+     * Releases the shared nodes of the specified execution context,
+     * discarding them if no longer held.
+     *
+     * @param scene the execution context
+     */
+    public static void release(X3DExecutionContext scene) {
+        Entry e = entries.get(scene);
+        if (e != null && e.references.decrementAndGet() == 0) {
+            entries.remove(scene, e);
+        }
+    }
+}
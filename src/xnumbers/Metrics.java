@@ -0,0 +1,473 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>Operational metrics of a game, exposed as a JMX MBean.</p>
+ *
+ * <p>Each game instance has metrics of its own, registered as
+ * <code>xnumbers:type=Game,name=&lt;n&gt;</code>, and every update to them
+ * is also applied to the metrics of the whole JVM, registered as
+ * <code>xnumbers:type=Game,name=total</code>. Counters are atomic longs and
+ * latencies are kept by {@link LatencyHistogram}s, hence recording takes a
+ * few atomic updates, allocates nothing and takes no locks, and metrics may
+ * be read at any time from any thread.</p>
+ *
+ * <p>Should JMX be unavailable, e.g. under a security manager, metrics are
+ * still kept but not registered.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class Metrics implements MetricsMBean {
+
+    /**
+     * The JMX domain metrics are registered in.
+     */
+    public static final String DOMAIN = "xnumbers";
+
+    /**
+     * The source of instance names.
+     */
+    private static final AtomicInteger names = new AtomicInteger();
+
+    /**
+     * The metrics of the whole JVM.
+     */
+    private static Metrics total = null;
+
+    /**
+     * The metrics updates are also applied to, null for the JVM's.
+     */
+    private final Metrics parent;
+
+    /**
+     * The name the metrics are registered under, null if not registered.
+     */
+    private ObjectName name = null;
+
+    /**
+     * Field events received.
+     */
+    private final AtomicLong events = new AtomicLong();
+
+    /**
+     * Tiles moved.
+     */
+    private final AtomicLong moves = new AtomicLong();
+
+    /**
+     * Games started.
+     */
+    private final AtomicLong started = new AtomicLong();
+
+    /**
+     * Games solved.
+     */
+    private final AtomicLong completed = new AtomicLong();
+
+    /**
+     * Games aborted.
+     */
+    private final AtomicLong aborted = new AtomicLong();
+
+    /**
+     * SAI field writes committed.
+     */
+    private final AtomicLong writes = new AtomicLong();
+
+    /**
+     * Clicks collapsed as redundant.
+     */
+    private final AtomicLong collapsed = new AtomicLong();
+
+    /**
+     * Clicks dropped for lack of room.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Latencies from receiving a click to committing its writes.
+     */
+    private final LatencyHistogram click = new LatencyHistogram();
+
+    /**
+     * Latencies of building the model.
+     */
+    private final LatencyHistogram initModel = new LatencyHistogram();
+
+    /**
+     * Latencies of generating boards.
+     */
+    private final LatencyHistogram resetData = new LatencyHistogram();
+
+    /**
+     * Creates metrics whose updates are also applied to the specified ones.
+     *
+     * @param parent the metrics to apply updates to, null if none
+     */
+    protected Metrics(Metrics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Creates metrics for a new game instance and registers them, along with
+     * the metrics of the whole JVM unless already registered.
+     *
+     * @return the metrics, as a Metrics
+     */
+    public static Metrics create() {
+        Metrics metrics = new Metrics(total());
+        metrics.register(String.valueOf(names.incrementAndGet()));
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of the whole JVM, registering them first if needed.
+     *
+     * @return the metrics, as a Metrics
+     */
+    public static synchronized Metrics total() {
+        if (total == null) {
+            total = new Metrics(null);
+            total.register("total");
+        }
+        return total;
+    }
+
+    /**
+     * Unregisters the metrics of a game instance that is shutting down. The
+     * JVM's metrics keep the updates applied to them.
+     */
+    public void unregister() {
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+            catch (JMException e) {
+                // already gone...
+            }
+            name = null;
+        }
+    }
+
+    /**
+     * Registers the metrics under the specified name, if possible.
+     *
+     * @param n the name
+     */
+    private void register(String n) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=Game,name=" + n);
+            server.registerMBean(this, objectName);
+            name = objectName;
+        }
+        catch (JMException e) {
+            // kept but not exposed...
+        }
+        catch (SecurityException e) {
+            // kept but not exposed...
+        }
+    }
+
+    /*** Recording ************************************************************/
+
+    /**
+     * Counts a field event received.
+     */
+    public void eventReceived() {
+        events.incrementAndGet();
+        if (parent != null) {
+            parent.eventReceived();
+        }
+    }
+
+    /**
+     * Counts a tile moved.
+     */
+    public void tileMoved() {
+        moves.incrementAndGet();
+        if (parent != null) {
+            parent.tileMoved();
+        }
+    }
+
+    /**
+     * Counts a game started.
+     */
+    public void gameStarted() {
+        started.incrementAndGet();
+        if (parent != null) {
+            parent.gameStarted();
+        }
+    }
+
+    /**
+     * Counts a game solved.
+     */
+    public void gameCompleted() {
+        completed.incrementAndGet();
+        if (parent != null) {
+            parent.gameCompleted();
+        }
+    }
+
+    /**
+     * Counts a game aborted.
+     */
+    public void gameAborted() {
+        aborted.incrementAndGet();
+        if (parent != null) {
+            parent.gameAborted();
+        }
+    }
+
+    /**
+     * Counts SAI field writes committed.
+     *
+     * @param count the number of writes
+     */
+    public void fieldsWritten(int count) {
+        writes.addAndGet(count);
+        if (parent != null) {
+            parent.fieldsWritten(count);
+        }
+    }
+
+    /**
+     * Counts a click collapsed as redundant.
+     */
+    public void inputCollapsed() {
+        collapsed.incrementAndGet();
+        if (parent != null) {
+            parent.inputCollapsed();
+        }
+    }
+
+    /**
+     * Counts a click dropped for lack of room.
+     */
+    public void inputDropped() {
+        dropped.incrementAndGet();
+        if (parent != null) {
+            parent.inputDropped();
+        }
+    }
+
+    /**
+     * Records the latency of a click.
+     *
+     * @param nanos the latency, in nanoseconds
+     */
+    public void clickHandled(long nanos) {
+        click.record(nanos);
+        if (parent != null) {
+            parent.clickHandled(nanos);
+        }
+    }
+
+    /**
+     * Records the time taken to build a model.
+     *
+     * @param nanos the time, in nanoseconds
+     */
+    public void modelInitialized(long nanos) {
+        initModel.record(nanos);
+        if (parent != null) {
+            parent.modelInitialized(nanos);
+        }
+    }
+
+    /**
+     * Records the time taken to generate a board.
+     *
+     * @param nanos the time, in nanoseconds
+     */
+    public void dataReset(long nanos) {
+        resetData.record(nanos);
+        if (parent != null) {
+            parent.dataReset(nanos);
+        }
+    }
+
+    /*** MetricsMBean *********************************************************/
+
+    /**
+     *
+     */
+    @Override public long getEventsReceived() {
+        return events.get();
+    }
+
+    /**
+     *
+     */
+    @Override public long getMoves() {
+        return moves.get();
+    }
+
+    /**
+     *
+     */
+    @Override public long getGamesStarted() {
+        return started.get();
+    }
+
+    /**
+     *
+     */
+    @Override public long getGamesCompleted() {
+        return completed.get();
+    }
+
+    /**
+     *
+     */
+    @Override public long getGamesAborted() {
+        return aborted.get();
+    }
+
+    /**
+     *
+     */
+    @Override public long getFieldWrites() {
+        return writes.get();
+    }
+
+    /**
+     *
+     */
+    @Override public long getInputsCollapsed() {
+        return collapsed.get();
+    }
+
+    /**
+     *
+     */
+    @Override public long getInputsDropped() {
+        return dropped.get();
+    }
+
+    /**
+     *
+     */
+    @Override public long getClickCount() {
+        return click.getCount();
+    }
+
+    /**
+     *
+     */
+    @Override public long getClickMeanNanos() {
+        return click.getMean();
+    }
+
+    /**
+     *
+     */
+    @Override public long getClickP99Nanos() {
+        return click.getPercentile(99);
+    }
+
+    /**
+     *
+     */
+    @Override public long getClickMaxNanos() {
+        return click.getMax();
+    }
+
+    /**
+     *
+     */
+    @Override public long[] getClickHistogram() {
+        return click.getBuckets();
+    }
+
+    /**
+     *
+     */
+    @Override public long getInitModelCount() {
+        return initModel.getCount();
+    }
+
+    /**
+     *
+     */
+    @Override public long getInitModelMeanNanos() {
+        return initModel.getMean();
+    }
+
+    /**
+     *
+     */
+    @Override public long getInitModelMaxNanos() {
+        return initModel.getMax();
+    }
+
+    /**
+     *
+     */
+    @Override public long[] getInitModelHistogram() {
+        return initModel.getBuckets();
+    }
+
+    /**
+     *
+     */
+    @Override public long getResetDataCount() {
+        return resetData.getCount();
+    }
+
+    /**
+     *
+     */
+    @Override public long getResetDataMeanNanos() {
+        return resetData.getMean();
+    }
+
+    /**
+     *
+     */
+    @Override public long getResetDataP99Nanos() {
+        return resetData.getPercentile(99);
+    }
+
+    /**
+     *
+     */
+    @Override public long getResetDataMaxNanos() {
+        return resetData.getMax();
+    }
+
+    /**
+     *
+     */
+    @Override public long[] getResetDataHistogram() {
+        return resetData.getBuckets();
+    }
+}
@@ -0,0 +1,189 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * <p>The JMX management interface of {@link Metrics}.</p>
+ *
+ * <p>Latencies are given in nanoseconds, percentiles being upper bounds
+ * within a factor of two, and histograms as the counts of 64 buckets of
+ * powers of two, as kept by {@link LatencyHistogram}.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public interface MetricsMBean {
+
+    /**
+     * Returns the number of field events received.
+     *
+     * @return the count, as a long
+     */
+    long getEventsReceived();
+
+    /**
+     * Returns the number of tiles moved.
+     *
+     * @return the count, as a long
+     */
+    long getMoves();
+
+    /**
+     * Returns the number of games started.
+     *
+     * @return the count, as a long
+     */
+    long getGamesStarted();
+
+    /**
+     * Returns the number of games solved.
+     *
+     * @return the count, as a long
+     */
+    long getGamesCompleted();
+
+    /**
+     * Returns the number of games aborted.
+     *
+     * @return the count, as a long
+     */
+    long getGamesAborted();
+
+    /**
+     * Returns the number of SAI field writes committed.
+     *
+     * @return the count, as a long
+     */
+    long getFieldWrites();
+
+    /**
+     * Returns the number of clicks collapsed as redundant by the input queue.
+     *
+     * @return the count, as a long
+     */
+    long getInputsCollapsed();
+
+    /**
+     * Returns the number of clicks dropped by the input queue for lack of
+     * room.
+     *
+     * @return the count, as a long
+     */
+    long getInputsDropped();
+
+    /**
+     * Returns the number of clicks handled.
+     *
+     * @return the count, as a long
+     */
+    long getClickCount();
+
+    /**
+     * Returns the mean time from receiving a click to committing the writes
+     * it has caused.
+     *
+     * @return the mean latency, as a long
+     */
+    long getClickMeanNanos();
+
+    /**
+     * Returns the 99th percentile of click latencies.
+     *
+     * @return the percentile, as a long
+     */
+    long getClickP99Nanos();
+
+    /**
+     * Returns the largest click latency.
+     *
+     * @return the maximum latency, as a long
+     */
+    long getClickMaxNanos();
+
+    /**
+     * Returns the histogram of click latencies.
+     *
+     * @return the bucket counts, as a long[]
+     */
+    long[] getClickHistogram();
+
+    /**
+     * Returns the number of models built.
+     *
+     * @return the count, as a long
+     */
+    long getInitModelCount();
+
+    /**
+     * Returns the mean time to build a model.
+     *
+     * @return the mean latency, as a long
+     */
+    long getInitModelMeanNanos();
+
+    /**
+     * Returns the largest time to build a model.
+     *
+     * @return the maximum latency, as a long
+     */
+    long getInitModelMaxNanos();
+
+    /**
+     * Returns the histogram of times to build a model.
+     *
+     * @return the bucket counts, as a long[]
+     */
+    long[] getInitModelHistogram();
+
+    /**
+     * Returns the number of boards generated.
+     *
+     * @return the count, as a long
+     */
+    long getResetDataCount();
+
+    /**
+     * Returns the mean time to generate a board.
+     *
+     * @return the mean latency, as a long
+     */
+    long getResetDataMeanNanos();
+
+    /**
+     * Returns the 99th percentile of times to generate a board.
+     *
+     * @return the percentile, as a long
+     */
+    long getResetDataP99Nanos();
+
+    /**
+     * Returns the largest time to generate a board.
+     *
+     * @return the maximum latency, as a long
+     */
+    long getResetDataMaxNanos();
+
+    /**
+     * Returns the histogram of times to generate a board.
+     *
+     * @return the bucket counts, as a long[]
+     */
+    long[] getResetDataHistogram();
+}
@@ -0,0 +1,272 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A compact record of the moves of a game, supporting undo, redo and
+ * replay.</p>
+ *
+ * <p>Each move is stored as the direction the free cell has moved in, one of
+ * {@link Board#UP}, {@link Board#DOWN}, {@link Board#LEFT} and
+ * {@link Board#RIGHT}, packed at two bits per move into a growable long[].
+ * Given the arrangement a game has started from, the directions determine
+ * every arrangement since, and the opposite of a direction, which undoes the
+ * move, is the direction with its lowest bit flipped. Recording, undoing and
+ * redoing a move therefore take constant time and allocate nothing unless
+ * the array has to grow, and a thousand moves take 250 bytes.</p>
+ *
+ * <p>The history keeps a position, i.e. the number of moves currently
+ * applied. Undone moves remain available for redoing until a new move is
+ * recorded.</p>
+ *
+ * <p>Histories are not thread-safe.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class MoveHistory {
+
+    /**
+     * Number of moves per word.
+     */
+    private static final int MOVES_PER_WORD = 32;
+
+    /**
+     * The moves, packed at two bits each, least significant bits first.
+     */
+    private long[] words;
+
+    /**
+     * Number of moves recorded, including undone ones.
+     */
+    private int length = 0;
+
+    /**
+     * Number of moves applied, i.e. the current position.
+     */
+    private int position = 0;
+
+    /**
+     * Creates an empty history.
+     */
+    public MoveHistory() {
+        words = new long[4];
+    }
+
+    /**
+     * Returns the opposite of the specified direction.
+     *
+     * @param direction the direction
+     *
+     * @return the opposite direction, as an int
+     */
+    public static int opposite(int direction) {
+        return direction ^ 1;
+    }
+
+    /**
+     * Returns the number of moves recorded, including undone ones.
+     *
+     * @return the length, as an int
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the number of moves applied.
+     *
+     * @return the position, as an int
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Checks whether a move can be undone.
+     *
+     * @return true if at least one move is applied, false otherwise
+     */
+    public boolean canUndo() {
+        return position != 0;
+    }
+
+    /**
+     * Checks whether a move can be redone.
+     *
+     * @return true if at least one move has been undone since the last one
+     * recorded, false otherwise
+     */
+    public boolean canRedo() {
+        return position != length;
+    }
+
+    /**
+     * Returns the direction of the specified move.
+     *
+     * @param index the index of the move
+     *
+     * @return the direction, as an int
+     *
+     * @throws IndexOutOfBoundsException if no such move has been recorded
+     */
+    public int get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Move " + index + " of " + length);
+        }
+        return (int) (words[index / MOVES_PER_WORD] >>> ((index % MOVES_PER_WORD) * 2)) & 3;
+    }
+
+    /**
+     * Records a move at the current position, discarding any undone moves.
+     *
+     * @param direction the direction the free cell has moved in
+     */
+    public void record(int direction) {
+        int word = position / MOVES_PER_WORD;
+        if (word == words.length) {
+            long[] newWords = new long[words.length * 2];
+            System.arraycopy(words, 0, newWords, 0, words.length);
+            words = newWords;
+        }
+        int shift = (position % MOVES_PER_WORD) * 2;
+        words[word] = (words[word] & ~(3L << shift)) | ((long) (direction & 3) << shift);
+        position++;
+        length = position;
+    }
+
+    /**
+     * Steps back over the last applied move.
+     *
+     * @return the direction the free cell has to move in to undo the move,
+     * -1 if no move is applied
+     */
+    public int undo() {
+        if (position == 0) {
+            return -1;
+        }
+        return opposite(get(--position));
+    }
+
+    /**
+     * Steps forward over the first undone move.
+     *
+     * @return the direction the free cell has to move in to redo the move, -1
+     * if no move has been undone
+     */
+    public int redo() {
+        if (position == length) {
+            return -1;
+        }
+        return get(position++);
+    }
+
+    /**
+     * Sets the current position, so that the first moves up to it are
+     * applied. The moves recorded are kept.
+     *
+     * @param position the new position
+     *
+     * @throws IndexOutOfBoundsException if the position exceeds the number of
+     * moves recorded
+     */
+    public void seek(int position) {
+        if (position < 0 || position > length) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + length);
+        }
+        this.position = position;
+    }
+
+    /**
+     * Returns the number of bytes the history takes when written.
+     *
+     * @return the number of bytes, as an int
+     *
+     * @see #write(ByteBuffer)
+     */
+    public int getPackedSize() {
+        return 8 + ((length + MOVES_PER_WORD - 1) / MOVES_PER_WORD) * 8;
+    }
+
+    /**
+     * Writes the history to the specified buffer, at its position: the
+     * number of moves recorded and the position, as ints, followed by the
+     * words holding the moves.
+     *
+     * @param buffer the buffer
+     *
+     * @throws java.nio.BufferOverflowException if the buffer has fewer than
+     * {@link #getPackedSize()} bytes remaining
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.putInt(length);
+        buffer.putInt(position);
+        int wordCount = (length + MOVES_PER_WORD - 1) / MOVES_PER_WORD;
+        for (int i = 0; i != wordCount; i++) {
+            buffer.putLong(words[i]);
+        }
+    }
+
+    /**
+     * Replaces the history with one read from the specified buffer, at its
+     * position, as written by {@link #write(ByteBuffer)}. The history is left
+     * unchanged should the buffer not hold a well-formed history.
+     *
+     * @param buffer the buffer
+     *
+     * @throws IllegalArgumentException if the buffer does not hold a
+     * well-formed history
+     */
+    public void read(ByteBuffer buffer) {
+        if (buffer.remaining() < 8) {
+            throw new IllegalArgumentException("Truncated move history");
+        }
+        int newLength = buffer.getInt();
+        int newPosition = buffer.getInt();
+        if (newLength < 0 || newPosition < 0 || newPosition > newLength) {
+            throw new IllegalArgumentException("Invalid move history position " + newPosition + " of " + newLength);
+        }
+        // counted in longs, as lengths near Integer.MAX_VALUE would
+        // overflow...
+        long count = ((long) newLength + MOVES_PER_WORD - 1) / MOVES_PER_WORD;
+        if (buffer.remaining() / 8 < count) {
+            throw new IllegalArgumentException("Truncated move history of " + newLength + " moves");
+        }
+        int wordCount = (int) count;
+        if (words.length < wordCount) {
+            words = new long[Math.max(wordCount, words.length * 2)];
+        }
+        for (int i = 0; i != wordCount; i++) {
+            words[i] = buffer.getLong();
+        }
+        length = newLength;
+        position = newPosition;
+    }
+
+    /**
+     * Discards all moves.
+     */
+    public void clear() {
+        length = 0;
+        position = 0;
+    }
+}
@@ -0,0 +1,343 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>A read-only pattern database, memory-mapped from a file created by
+ * {@link PatternDatabaseGenerator}.</p>
+ *
+ * <p>A pattern database holds, for every placement of a set of pattern tiles
+ * on the board, a lower bound of the number of moves of pattern tiles
+ * required to bring them to their goal cells. Since only moves of pattern
+ * tiles are counted, the values of databases over disjoint sets of tiles may
+ * be added up.</p>
+ *
+ * <p>Every value is at least the Manhattan distance of the pattern tiles and
+ * differs from it by an even number, hence the database stores half the
+ * difference in a 4-bit entry, two entries per byte, differences beyond 30
+ * being clamped. Placements are indexed by their rank in the k-permutations of
+ * the board's cells.</p>
+ *
+ * <p>Databases are loaded through {@link #load(File)}, which maps each file
+ * once per JVM and hands the same instance to all callers. Lookups only use
+ * absolute reads on the read-only mapping and are therefore safe to perform
+ * concurrently.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class PatternDatabase {
+
+    /**
+     * File format magic number.
+     */
+    public static final int MAGIC = 0x584E5044;
+
+    /**
+     * File format version.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Default number of tiles per pattern.
+     */
+    public static final int DEFAULT_PATTERN_SIZE = 6;
+
+    /**
+     * Largest board to be covered by a single pattern.
+     */
+    public static final int MAX_SINGLE_PATTERN_SIZE = 9;
+
+    /**
+     * Databases loaded so far, by canonical file path.
+     */
+    private static final ConcurrentMap<String, PatternDatabase> loaded = new ConcurrentHashMap<String, PatternDatabase>();
+
+    /**
+     * The board's width.
+     */
+    private final int width;
+
+    /**
+     * The board's height.
+     */
+    private final int height;
+
+    /**
+     * The missing tile index.
+     */
+    private final int missingTileIndex;
+
+    /**
+     * The pattern tiles.
+     */
+    private final int[] tiles;
+
+    /**
+     * The Manhattan distance of each pattern tile from each cell, indexed by
+     * pattern tile index times cell count plus cell.
+     */
+    private final int[] distances;
+
+    /**
+     * The mapped entries.
+     */
+    private final ByteBuffer entries;
+
+    /**
+     * Creates a pattern database over the specified entries.
+     *
+     * @param width the board's width
+     * @param height the board's height
+     * @param missingTileIndex the missing tile index
+     * @param tiles the pattern tiles
+     * @param entries the packed entries
+     */
+    protected PatternDatabase(int width, int height, int missingTileIndex, int[] tiles, ByteBuffer entries) {
+        this.width = width;
+        this.height = height;
+        this.missingTileIndex = missingTileIndex;
+        this.tiles = tiles;
+        this.entries = entries;
+        int size = width * height;
+        distances = new int[tiles.length * size];
+        for (int i = 0; i != tiles.length; i++) {
+            for (int p = 0; p != size; p++) {
+                distances[i * size + p] = Math.abs(p / width - tiles[i] / width) + Math.abs(p % width - tiles[i] % width);
+            }
+        }
+    }
+
+    /**
+     * Returns the board's width.
+     *
+     * @return the width, as an int
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the board's height.
+     *
+     * @return the height, as an int
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the missing tile index.
+     *
+     * @return the missing tile index, as an int
+     */
+    public int getMissingTileIndex() {
+        return missingTileIndex;
+    }
+
+    /**
+     * Returns a copy of the pattern tiles.
+     *
+     * @return the pattern tiles, as an int[]
+     */
+    public int[] getTiles() {
+        return tiles.clone();
+    }
+
+    /**
+     * Returns the lower bound of pattern tile moves for the specified tile
+     * positions.
+     *
+     * @param positions the cell of each tile, as an int[]
+     *
+     * @return the lower bound, as an int
+     */
+    public int estimate(int[] positions) {
+        int size = width * height;
+        int manhattan = 0;
+        for (int i = 0; i != tiles.length; i++) {
+            manhattan += distances[i * size + positions[tiles[i]]];
+        }
+        int rank = rank(positions, tiles, size);
+        int b = entries.get(rank >>> 1);
+        return manhattan + 2 * ((rank & 1) == 0 ? b & 0x0F : (b >>> 4) & 0x0F);
+    }
+
+    /**
+     * Returns the rank of the placement of the specified tiles among the
+     * k-permutations of the board's cells.
+     *
+     * @param positions the cell of each tile, as an int[]
+     * @param tiles the pattern tiles, as an int[]
+     * @param size the number of cells
+     *
+     * @return the rank, as an int
+     */
+    public static int rank(int[] positions, int[] tiles, int size) {
+        int rank = 0;
+        for (int i = 0; i != tiles.length; i++) {
+            int p = positions[tiles[i]];
+            int digit = p;
+            for (int j = 0; j != i; j++) {
+                if (positions[tiles[j]] < p) {
+                    digit--;
+                }
+            }
+            rank = rank * (size - i) + digit;
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the number of placements of the specified number of tiles.
+     *
+     * @param tileCount the number of tiles
+     * @param size the number of cells
+     *
+     * @return the number of placements, as a long
+     */
+    public static long placements(int tileCount, int size) {
+        long count = 1;
+        for (int i = 0; i != tileCount; i++) {
+            count *= size - i;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the default partition of the tiles of a board into disjoint
+     * patterns. Boards of up to {@link #MAX_SINGLE_PATTERN_SIZE} cells are
+     * covered by a single pattern, larger ones are split in goal order into
+     * patterns of {@link #DEFAULT_PATTERN_SIZE} tiles (e.g., 6-6-3 for a 4x4
+     * board and 6-6-6-6 for a 5x5 one).
+     *
+     * @param width the board's width
+     * @param height the board's height
+     * @param missingTileIndex the missing tile index
+     *
+     * @return the patterns, as an int[][]
+     */
+    public static int[][] partition(int width, int height, int missingTileIndex) {
+        int size = width * height;
+        int tileCount = size - 1;
+        int patternSize = size <= MAX_SINGLE_PATTERN_SIZE ? tileCount : DEFAULT_PATTERN_SIZE;
+        int[][] patterns = new int[(tileCount + patternSize - 1) / patternSize][];
+        int t = 0;
+        for (int i = 0; i != patterns.length; i++) {
+            patterns[i] = new int[Math.min(patternSize, tileCount - i * patternSize)];
+            for (int j = 0; j != patterns[i].length; j++, t++) {
+                if (t == missingTileIndex) {
+                    t++;
+                }
+                patterns[i][j] = t;
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Returns the name of the file holding the specified pattern of the
+     * default partition.
+     *
+     * @param width the board's width
+     * @param height the board's height
+     * @param missingTileIndex the missing tile index
+     * @param pattern the index of the pattern in the default partition
+     *
+     * @return the file name, as a String
+     */
+    public static String fileName(int width, int height, int missingTileIndex, int pattern) {
+        return "xnumbers-" + width + "x" + height + "-" + missingTileIndex + "-" + pattern + ".pdb";
+    }
+
+    /**
+     * Loads the pattern database held in the specified file, unless already
+     * loaded. The file is mapped read-only, so that its entries reside in the
+     * page cache rather than in the heap.
+     *
+     * @param file the file
+     *
+     * @return the pattern database, as a PatternDatabase
+     *
+     * @throws IOException if the file cannot be read or is not a pattern
+     * database
+     */
+    public static PatternDatabase load(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        PatternDatabase database = loaded.get(key);
+        if (database == null) {
+            database = map(file);
+            PatternDatabase existing = loaded.putIfAbsent(key, database);
+            if (existing != null) {
+                database = existing;
+            }
+        }
+        return database;
+    }
+
+    /**
+     * Maps the specified file and parses its header.
+     *
+     * @param file the file
+     *
+     * @return the pattern database, as a PatternDatabase
+     *
+     * @throws IOException if the file cannot be read or is not a pattern
+     * database
+     */
+    private static PatternDatabase map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a pattern database: " + file);
+            }
+            if (buffer.getInt() != VERSION) {
+                throw new IOException("Unsupported pattern database version: " + file);
+            }
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int missingTileIndex = buffer.getInt();
+            int[] tiles = new int[buffer.getInt()];
+            for (int i = 0; i != tiles.length; i++) {
+                tiles[i] = buffer.getInt();
+            }
+            long count = placements(tiles.length, width * height);
+            if (buffer.remaining() != (count + 1) / 2) {
+                throw new IOException("Truncated pattern database: " + file);
+            }
+            return new PatternDatabase(width, height, missingTileIndex, tiles, buffer.slice());
+        }
+        finally {
+            // the mapping remains valid after the channel is closed...
+            raf.close();
+        }
+    }
+}
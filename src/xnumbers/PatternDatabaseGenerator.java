@@ -0,0 +1,464 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * <p>Generates the additive pattern databases used by
+ * {@link PatternDatabaseHeuristic}.</p>
+ *
+ * <p>Databases are computed by a breadth-first search backwards from the goal
+ * placement of the pattern tiles, in which only moves of pattern tiles are
+ * counted. Where memory allows, the search state also includes the region of
+ * cells reachable by the free cell without moving a pattern tile, which makes
+ * for stronger estimates; otherwise the free cell is relaxed away and pattern
+ * tiles may move to any adjacent cell not held by another pattern tile. In
+ * both cases, the minimum over all free cell regions is stored for each
+ * placement.</p>
+ *
+ * <p>The search proceeds in layers, scanning a byte-per-state table for the
+ * states of the current depth, so no queue is required. Generation is an
+ * offline task and requires a large heap for big patterns (about 92MB for a
+ * 6-tile pattern of a 4x4 board, 128MB for a 6-tile pattern of a 5x5
+ * board).</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class PatternDatabaseGenerator {
+
+    /**
+     * Maximum number of search states for which the free cell is tracked.
+     */
+    public static final long MAX_TRACKED_STATES = 1L << 28;
+
+    /**
+     * Marker for unvisited states.
+     */
+    private static final int UNVISITED = 0xFF;
+
+    /**
+     * The board's width.
+     */
+    private final int width;
+
+    /**
+     * The board's height.
+     */
+    private final int height;
+
+    /**
+     * The number of cells.
+     */
+    private final int size;
+
+    /**
+     * The missing tile index.
+     */
+    private final int missingTileIndex;
+
+    /**
+     * The pattern tiles.
+     */
+    private final int[] tiles;
+
+    /**
+     * The number of placements of the pattern tiles.
+     */
+    private final int placements;
+
+    /**
+     * The number of free cell regions per placement, 1 if not tracked.
+     */
+    private final int regions;
+
+    /**
+     * The neighbours of each cell, four entries per cell, -1 denoting no
+     * neighbour.
+     */
+    private final int[] neighbours;
+
+    /**
+     * The pattern tile at each cell during expansion, -1 if none.
+     */
+    private final int[] occupant;
+
+    /**
+     * The cell of each pattern tile during expansion.
+     */
+    private final int[] placement;
+
+    /**
+     * Tile positions for ranking, indexed by tile.
+     */
+    private final int[] positions;
+
+    /**
+     * Flood fill stack.
+     */
+    private final int[] stack;
+
+    /**
+     * Flood fill visit stamps.
+     */
+    private final int[] stamps;
+
+    /**
+     * Current flood fill stamp.
+     */
+    private int stamp = 0;
+
+    /**
+     * Progress output, null for none.
+     */
+    private PrintStream log = null;
+
+    /**
+     * Creates a generator for the specified pattern, tracking the free cell
+     * where memory allows.
+     *
+     * @param width the board's width
+     * @param height the board's height
+     * @param missingTileIndex the missing tile index
+     * @param tiles the pattern tiles
+     */
+    public PatternDatabaseGenerator(int width, int height, int missingTileIndex, int[] tiles) {
+        this(width, height, missingTileIndex, tiles, true);
+    }
+
+    /**
+     * Creates a generator for the specified pattern.
+     *
+     * @param width the board's width
+     * @param height the board's height
+     * @param missingTileIndex the missing tile index
+     * @param tiles the pattern tiles
+     * @param trackRegions true to track the free cell where memory allows,
+     * false to always relax it away
+     */
+    public PatternDatabaseGenerator(int width, int height, int missingTileIndex, int[] tiles, boolean trackRegions) {
+        this.width = width;
+        this.height = height;
+        this.size = width * height;
+        this.missingTileIndex = missingTileIndex;
+        this.tiles = tiles.clone();
+        long count = PatternDatabase.placements(tiles.length, size);
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Pattern of " + tiles.length + " tiles too large for a " + width + "x" + height + " board");
+        }
+        placements = (int) count;
+        regions = trackRegions && count * size <= MAX_TRACKED_STATES ? size : 1;
+        neighbours = Board.neighbours(width, height);
+        occupant = new int[size];
+        placement = new int[tiles.length];
+        positions = new int[size];
+        stack = new int[size];
+        stamps = new int[size];
+    }
+
+    /**
+     * Sets the stream progress is reported to.
+     *
+     * @param log the stream, null for none
+     */
+    public void setLog(PrintStream log) {
+        this.log = log;
+    }
+
+    /**
+     * Runs the search and returns the packed database entries.
+     *
+     * @return the packed entries, as a byte[]
+     */
+    public byte[] generate() {
+        byte[] depths = new byte[placements * regions];
+        Arrays.fill(depths, (byte) UNVISITED);
+
+        // start from the goal placement, the free cell at its goal...
+        for (int i = 0; i != tiles.length; i++) {
+            placement[i] = tiles[i];
+        }
+        occupy();
+        int goal = PatternDatabase.rank(positions, tiles, size);
+        depths[goal * regions + (regions == 1 ? 0 : region(missingTileIndex))] = 0;
+
+        long reached = 1;
+        int depth = 0;
+        boolean expanded = true;
+        while (expanded && depth < UNVISITED - 1) {
+            expanded = false;
+            for (int state = 0; state != depths.length; state++) {
+                if ((depths[state] & 0xFF) == depth) {
+                    expanded = true;
+                    reached += expand(state, depths, depth + 1);
+                }
+            }
+            if (log != null) {
+                log.println("Depth " + depth + ", " + reached + " states reached");
+            }
+            depth++;
+        }
+
+        // keep the minimum over regions, relative to manhattan distance...
+        byte[] entries = new byte[(placements + 1) / 2];
+        for (int p = 0; p != placements; p++) {
+            int min = UNVISITED;
+            for (int r = 0; r != regions; r++) {
+                min = Math.min(min, depths[p * regions + r] & 0xFF);
+            }
+            // placements never reached belong to unsolvable boards only...
+            int value = 0;
+            if (min != UNVISITED) {
+                unrank(p);
+                value = Math.min(15, Math.max(0, (min - manhattan()) / 2));
+            }
+            entries[p >>> 1] |= (p & 1) == 0 ? value : value << 4;
+        }
+        return entries;
+    }
+
+    /**
+     * Runs the search and writes the database to the specified file.
+     *
+     * @param file the file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        byte[] entries = generate();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(PatternDatabase.MAGIC);
+            out.writeInt(PatternDatabase.VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(missingTileIndex);
+            out.writeInt(tiles.length);
+            for (int i = 0; i != tiles.length; i++) {
+                out.writeInt(tiles[i]);
+            }
+            out.write(entries);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Expands the specified state, assigning the specified depth to all
+     * unvisited successors.
+     *
+     * @param state the state
+     * @param depths the depth table
+     * @param depth the successors' depth
+     *
+     * @return the number of successors reached for the first time
+     */
+    private int expand(int state, byte[] depths, int depth) {
+        int reached = 0;
+        unrank(state / regions);
+        occupy();
+        int free = regions == 1 ? -1 : state % regions;
+        for (int i = 0; i != tiles.length; i++) {
+            int from = placement[i];
+            for (int d = 0; d != 4; d++) {
+                int to = neighbours[from * 4 + d];
+                if (to == -1 || occupant[to] != -1) {
+                    continue;
+                }
+                if (free != -1 && !sameRegion(to, free)) {
+                    continue;
+                }
+                // move the tile, the free cell taking its place...
+                placement[i] = to;
+                occupant[from] = -1;
+                occupant[to] = i;
+                positions[tiles[i]] = to;
+                int next = PatternDatabase.rank(positions, tiles, size) * regions + (free != -1 ? region(from) : 0);
+                if ((depths[next] & 0xFF) == UNVISITED) {
+                    depths[next] = (byte) depth;
+                    reached++;
+                }
+                // ...and back...
+                placement[i] = from;
+                occupant[to] = -1;
+                occupant[from] = i;
+                positions[tiles[i]] = from;
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Decodes the specified placement rank into the placement array.
+     *
+     * @param rank the rank
+     */
+    private void unrank(int rank) {
+        for (int i = tiles.length - 1; i >= 0; i--) {
+            placement[i] = rank % (size - i);
+            rank /= size - i;
+        }
+        // digits count free cells, map them to actual cells...
+        for (int i = 0; i != tiles.length; i++) {
+            int digit = placement[i];
+            int cell = 0;
+            while (true) {
+                boolean used = false;
+                for (int j = 0; j != i; j++) {
+                    if (placement[j] == cell) {
+                        used = true;
+                        break;
+                    }
+                }
+                if (!used) {
+                    if (digit == 0) {
+                        break;
+                    }
+                    digit--;
+                }
+                cell++;
+            }
+            placement[i] = cell;
+        }
+    }
+
+    /**
+     * Updates the occupant and positions arrays from the placement array.
+     */
+    private void occupy() {
+        Arrays.fill(occupant, -1);
+        for (int i = 0; i != tiles.length; i++) {
+            occupant[placement[i]] = i;
+            positions[tiles[i]] = placement[i];
+        }
+    }
+
+    /**
+     * Returns the Manhattan distance of the pattern tiles in the placement
+     * array.
+     *
+     * @return the distance, as an int
+     */
+    private int manhattan() {
+        int result = 0;
+        for (int i = 0; i != tiles.length; i++) {
+            int p = placement[i];
+            int t = tiles[i];
+            result += Math.abs(p / width - t / width) + Math.abs(p % width - t % width);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the smallest cell of the free cell region containing the
+     * specified cell, according to the occupant array.
+     *
+     * @param cell the cell
+     *
+     * @return the region's smallest cell, as an int
+     */
+    private int region(int cell) {
+        int min = cell;
+        int top = flood(cell);
+        for (int i = 0; i != top; i++) {
+            min = Math.min(min, stack[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Checks whether two cells belong to the same free cell region, according
+     * to the occupant array.
+     *
+     * @param a the first cell
+     * @param b the second cell
+     *
+     * @return true if the cells belong to the same region, false otherwise
+     */
+    private boolean sameRegion(int a, int b) {
+        flood(a);
+        return stamps[b] == stamp;
+    }
+
+    /**
+     * Flood-fills the free cell region containing the specified cell,
+     * stamping and collecting its cells in the stack array.
+     *
+     * @param cell the cell
+     *
+     * @return the number of cells in the region
+     */
+    private int flood(int cell) {
+        stamp++;
+        int top = 0;
+        stack[top++] = cell;
+        stamps[cell] = stamp;
+        for (int i = 0; i != top; i++) {
+            int c = stack[i];
+            for (int d = 0; d != 4; d++) {
+                int n = neighbours[c * 4 + d];
+                if (n != -1 && occupant[n] == -1 && stamps[n] != stamp) {
+                    stamps[n] = stamp;
+                    stack[top++] = n;
+                }
+            }
+        }
+        return top;
+    }
+
+    /*** Application entry point **********************************************/
+
+    /**
+     * Generates the default partition of pattern databases for a board.
+     * Usage: {@code PatternDatabaseGenerator width height [missingTileIndex]
+     * [directory]}, the missing tile index defaulting to the last tile and
+     * the directory to the current one.
+     *
+     * @param args command-line arguments
+     *
+     * @throws IOException if a database cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: PatternDatabaseGenerator width height [missingTileIndex] [directory]");
+            System.exit(1);
+        }
+        int width = Integer.parseInt(args[0]);
+        int height = Integer.parseInt(args[1]);
+        int missingTileIndex = args.length > 2 ? Integer.parseInt(args[2]) : width * height - 1;
+        File directory = new File(args.length > 3 ? args[3] : ".");
+        int[][] patterns = PatternDatabase.partition(width, height, missingTileIndex);
+        for (int i = 0; i != patterns.length; i++) {
+            File file = new File(directory, PatternDatabase.fileName(width, height, missingTileIndex, i));
+            System.out.println("Generating " + file + " for tiles " + Arrays.toString(patterns[i]) + "...");
+            PatternDatabaseGenerator generator = new PatternDatabaseGenerator(width, height, missingTileIndex, patterns[i]);
+            generator.setLog(System.out);
+            generator.write(file);
+        }
+    }
+}
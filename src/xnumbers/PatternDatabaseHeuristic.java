@@ -0,0 +1,153 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>The additive disjoint pattern database heuristic: the sum of the
+ * estimates of a set of pattern databases over disjoint sets of tiles.</p>
+ *
+ * <p>A move only affects the pattern the moved tile belongs to, hence only a
+ * single database lookup is performed per move.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class PatternDatabaseHeuristic implements Heuristic {
+
+    /**
+     * The pattern databases.
+     */
+    private final PatternDatabase[] databases;
+
+    /**
+     * The index of the database each tile belongs to, -1 for none.
+     */
+    private final int[] patternOf;
+
+    /**
+     * The current estimate of each database.
+     */
+    private final int[] values;
+
+    /**
+     * The bound positions array.
+     */
+    private int[] positions = null;
+
+    /**
+     * The current sum of estimates.
+     */
+    private int total = 0;
+
+    /**
+     * Creates a heuristic over the specified pattern databases.
+     *
+     * @param databases the pattern databases, which must refer to the same
+     * board and have disjoint patterns
+     */
+    public PatternDatabaseHeuristic(PatternDatabase[] databases) {
+        this.databases = databases.clone();
+        PatternDatabase first = databases[0];
+        patternOf = new int[first.getWidth() * first.getHeight()];
+        for (int i = 0; i != patternOf.length; i++) {
+            patternOf[i] = -1;
+        }
+        for (int i = 0; i != databases.length; i++) {
+            PatternDatabase d = databases[i];
+            if (d.getWidth() != first.getWidth() || d.getHeight() != first.getHeight() || d.getMissingTileIndex() != first.getMissingTileIndex()) {
+                throw new IllegalArgumentException("Pattern databases refer to different boards");
+            }
+            int[] tiles = d.getTiles();
+            for (int j = 0; j != tiles.length; j++) {
+                if (patternOf[tiles[j]] != -1) {
+                    throw new IllegalArgumentException("Tile " + tiles[j] + " belongs to more than one pattern");
+                }
+                patternOf[tiles[j]] = i;
+            }
+        }
+        values = new int[databases.length];
+    }
+
+    /**
+     *
+     */
+    @Override public int initialize(int[] cells, int[] positions) {
+        this.positions = positions;
+        total = 0;
+        for (int i = 0; i != databases.length; i++) {
+            values[i] = databases[i].estimate(positions);
+            total += values[i];
+        }
+        return total;
+    }
+
+    /**
+     *
+     */
+    @Override public int update(int tile, int from, int to) {
+        int i = patternOf[tile];
+        if (i != -1) {
+            int value = databases[i].estimate(positions);
+            total += value - values[i];
+            values[i] = value;
+        }
+        return total;
+    }
+
+    /**
+     * Loads the default partition of pattern databases for the specified
+     * board from the specified directory, as generated by
+     * {@link PatternDatabaseGenerator}. Databases are shared with all other
+     * heuristics loaded from the same files.
+     *
+     * @param directory the directory holding the database files
+     * @param width the board's width
+     * @param height the board's height
+     * @param missingTileIndex the missing tile index
+     *
+     * @return the heuristic, as a PatternDatabaseHeuristic, or null if the
+     * directory does not hold databases for the specified board
+     *
+     * @throws IOException if a database file cannot be read or does not
+     * hold the expected pattern
+     */
+    public static PatternDatabaseHeuristic load(File directory, int width, int height, int missingTileIndex) throws IOException {
+        int[][] patterns = PatternDatabase.partition(width, height, missingTileIndex);
+        PatternDatabase[] databases = new PatternDatabase[patterns.length];
+        for (int i = 0; i != patterns.length; i++) {
+            File file = new File(directory, PatternDatabase.fileName(width, height, missingTileIndex, i));
+            if (!file.isFile()) {
+                return null;
+            }
+            databases[i] = PatternDatabase.load(file);
+            // a stale or misnamed file would make the heuristic
+            // inadmissible, and the solver's results non-optimal...
+            PatternDatabase d = databases[i];
+            if (d.getWidth() != width || d.getHeight() != height || d.getMissingTileIndex() != missingTileIndex || !Arrays.equals(d.getTiles(), patterns[i])) {
+                throw new IOException("Pattern database does not hold pattern " + i + " of the " + width + "x" + height + " board: " + file);
+            }
+        }
+        return new PatternDatabaseHeuristic(databases);
+    }
+}
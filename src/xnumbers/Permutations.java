@@ -0,0 +1,162 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * <p>Permutation helpers used to generate and validate boards.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public final class Permutations {
+
+    /**
+     * Not instantiable.
+     */
+    private Permutations() {
+    }
+
+    /**
+     * Shuffles the specified array in place so that every permutation of its
+     * elements is equally likely (Fisher-Yates).
+     *
+     * @param array the array to shuffle, as an int[]
+     * @param random the source of randomness
+     */
+    public static void shuffle(int[] array, RandomSource random) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = array[i];
+            array[i] = array[j];
+            array[j] = t;
+        }
+    }
+
+    /**
+     * Returns the parity of the number of inversions of the specified
+     * permutation, counting smaller elements to the right of each element
+     * with a Fenwick tree in O(n log n).
+     *
+     * @param permutation a permutation of 0..n-1, as an int[]
+     *
+     * @return 0 if the permutation is even, 1 if odd
+     */
+    public static int parity(int[] permutation) {
+        int n = permutation.length;
+        int[] tree = new int[n + 1];
+        int inversions = 0;
+        for (int i = n - 1; i >= 0; i--) {
+            // count elements seen so far that are smaller than this one...
+            for (int k = permutation[i]; k > 0; k -= k & -k) {
+                inversions += tree[k];
+            }
+            // ...and add this one...
+            for (int k = permutation[i] + 1; k <= n; k += k & -k) {
+                tree[k]++;
+            }
+        }
+        return inversions & 1;
+    }
+
+    /**
+     * Checks whether the specified arrangement of a board can be solved.
+     * Treating the free cell as the missing tile, every move transposes two
+     * elements of the arrangement and moves the free cell by one, hence an
+     * arrangement is solvable if and only if its parity equals the parity of
+     * the distance of the free cell from its goal. On single-row and
+     * single-column boards tiles can never pass each other, hence an
+     * arrangement is solvable if and only if its tiles are in order.
+     *
+     * @param cells the tile index at each cell, the free cell holding the
+     * missing tile index, as an int[]
+     * @param width the board's width
+     * @param missingTileIndex the missing tile index
+     *
+     * @return true if the arrangement is solvable, false otherwise
+     */
+    public static boolean isSolvable(int[] cells, int width, int missingTileIndex) {
+        if (width == 1 || width == cells.length) {
+            int last = -1;
+            for (int i = 0; i != cells.length; i++) {
+                if (cells[i] != missingTileIndex) {
+                    if (cells[i] < last) {
+                        return false;
+                    }
+                    last = cells[i];
+                }
+            }
+            return true;
+        }
+        int free = 0;
+        while (cells[free] != missingTileIndex) {
+            free++;
+        }
+        int distance = Math.abs(free / width - missingTileIndex / width) +
+            Math.abs(free % width - missingTileIndex % width);
+        return parity(cells) == (distance & 1);
+    }
+
+    /**
+     * Generates a uniformly random solvable arrangement of a board. The
+     * arrangement is shuffled in O(n) and, if unsolvable, fixed by swapping
+     * the first two tiles other than the missing one. For a given free cell,
+     * the swap maps unsolvable arrangements one-to-one onto solvable ones,
+     * hence the result is uniform over solvable arrangements. Single-row and
+     * single-column boards, where only the position of the free cell may
+     * vary, are handled separately, which also leaves at least four cells
+     * for the swap.
+     *
+     * @param cells the array to fill with the tile index at each cell, the
+     * free cell holding the missing tile index, as an int[]
+     * @param width the board's width
+     * @param missingTileIndex the missing tile index
+     * @param random the source of randomness
+     */
+    public static void randomSolvable(int[] cells, int width, int missingTileIndex, RandomSource random) {
+        if (width == 1 || width == cells.length) {
+            // tiles keep their order, the free cell going anywhere...
+            int free = random.nextInt(cells.length);
+            int tile = 0;
+            for (int i = 0; i != cells.length; i++) {
+                if (i == free) {
+                    cells[i] = missingTileIndex;
+                }
+                else {
+                    if (tile == missingTileIndex) {
+                        tile++;
+                    }
+                    cells[i] = tile++;
+                }
+            }
+            return;
+        }
+        for (int i = 0; i != cells.length; i++) {
+            cells[i] = i;
+        }
+        shuffle(cells, random);
+        if (!isSolvable(cells, width, missingTileIndex)) {
+            int a = cells[0] != missingTileIndex ? 0 : 1;
+            int b = cells[a + 1] != missingTileIndex ? a + 1 : a + 2;
+            int t = cells[a];
+            cells[a] = cells[b];
+            cells[b] = t;
+        }
+    }
+}
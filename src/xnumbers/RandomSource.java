@@ -0,0 +1,144 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A fast, seedable source of pseudo-random numbers (SplitMix64).</p>
+ *
+ * <p>Unlike {@link Math#random()}, which draws from a single generator shared
+ * by the whole JVM, each source holds its own state, so that instances do not
+ * contend with each other and a given seed always yields the same sequence.
+ * Sources may be split into statistically independent ones, e.g. to give
+ * each part of a game its own reproducible sequence.</p>
+ *
+ * <p>Sources are not thread-safe.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class RandomSource {
+
+    /**
+     * The state increment, i.e. the odd integer closest to 2^64 divided by
+     * the golden ratio.
+     */
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Seed generator for unseeded sources.
+     */
+    private static final AtomicLong seeder = new AtomicLong(mix(System.currentTimeMillis()) ^ mix(System.nanoTime()));
+
+    /**
+     * The state.
+     */
+    private long state;
+
+    /**
+     * Creates a source with the specified seed.
+     *
+     * @param seed the seed
+     */
+    public RandomSource(long seed) {
+        state = seed;
+    }
+
+    /**
+     * Creates a source with a seed that is likely to differ from that of any
+     * other source in the JVM.
+     */
+    public RandomSource() {
+        this(mix(seeder.getAndAdd(2 * GAMMA)));
+    }
+
+    /**
+     * Returns the next pseudo-random long.
+     *
+     * @return the value, as a long
+     */
+    public long nextLong() {
+        return mix(state += GAMMA);
+    }
+
+    /**
+     * Returns a pseudo-random int, uniformly distributed in [0, bound).
+     *
+     * @param bound the bound, which must be positive
+     *
+     * @return the value, as an int
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("Bound must be positive: " + bound);
+        }
+        int r = (int) (nextLong() >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            return (int) ((bound * (long) r) >> 31);
+        }
+        // reject values from the incomplete last range of bound values...
+        for (int u = r; u - (r = u % bound) + m < 0; u = (int) (nextLong() >>> 33)) {
+        }
+        return r;
+    }
+
+    /**
+     * Returns a pseudo-random double, uniformly distributed in [0, 1).
+     *
+     * @return the value, as a double
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns a pseudo-random float, uniformly distributed in [0, 1).
+     *
+     * @return the value, as a float
+     */
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * Creates a new source, seeded from this one, whose sequence is
+     * independent of the rest of this one's.
+     *
+     * @return the new source, as a RandomSource
+     */
+    public RandomSource split() {
+        return new RandomSource(nextLong() ^ 0x6A09E667F3BCC909L);
+    }
+
+    /**
+     * The SplitMix64 finalizer, a bijective mix of all bits of a long.
+     *
+     * @param z the long to mix
+     *
+     * @return the mixed long
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
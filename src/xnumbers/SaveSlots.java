@@ -0,0 +1,363 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>A file of fixed-size slots holding saved games, memory-mapped for
+ * reading and writing.</p>
+ *
+ * <p>The file starts with a header of four ints: a magic number, the format
+ * version, the number of slots and the size of each slot. Each slot starts
+ * with a marker, which is zero for an empty slot, the length of the saved
+ * data and the game time, as a double, followed by the game as written by
+ * {@link Game#save(ByteBuffer, boolean)}. Saving and restoring a game
+ * therefore amount to a few hundred bytes copied to or from the mapping,
+ * with no serialization framework involved and nothing to parse but the
+ * game itself. Saved games reach the file through the page cache, hence
+ * survive the JVM, and {@link #force()} flushes them to the device.</p>
+ *
+ * <p>Should the move history of a game not fit in a slot, the game is saved
+ * from its current arrangement with an empty history instead, so that it
+ * may still be resumed, though not replayed.</p>
+ *
+ * <p>Slot files are opened through {@link #open(File, int, int)}, which maps
+ * each file once per JVM and hands the same instance to all callers, so that
+ * any number of games may share a file, each through its own slot. Saving
+ * and restoring are synchronized, and the marker of a slot is cleared while
+ * its game is being written and set last.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class SaveSlots {
+
+    /**
+     * File format magic number.
+     */
+    public static final int MAGIC = 0x584E5356;
+
+    /**
+     * File format version.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Default number of slots.
+     */
+    public static final int DEFAULT_SLOT_COUNT = 64;
+
+    /**
+     * Default slot size, in bytes, enough for a 16x16 board and a history of
+     * over 15000 moves.
+     */
+    public static final int DEFAULT_SLOT_SIZE = 4096;
+
+    /**
+     * Size of the file header, in bytes.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Size of a slot's header, in bytes.
+     */
+    private static final int SLOT_HEADER_SIZE = 16;
+
+    /**
+     * Marker of a slot holding a saved game.
+     */
+    private static final int SLOT_USED = 0x47414D45;
+
+    /**
+     * Slot files opened so far, by canonical file path.
+     */
+    private static final ConcurrentMap<String, SaveSlots> opened = new ConcurrentHashMap<String, SaveSlots>();
+
+    /**
+     * The file.
+     */
+    private final File file;
+
+    /**
+     * The number of slots.
+     */
+    private final int slotCount;
+
+    /**
+     * The size of each slot, in bytes.
+     */
+    private final int slotSize;
+
+    /**
+     * The mapping of the whole file.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Creates a slot file over the specified mapping.
+     *
+     * @param file the file
+     * @param slotCount the number of slots
+     * @param slotSize the size of each slot, in bytes
+     * @param buffer the mapping of the whole file
+     */
+    protected SaveSlots(File file, int slotCount, int slotSize, MappedByteBuffer buffer) {
+        this.file = file;
+        this.slotCount = slotCount;
+        this.slotSize = slotSize;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns the file.
+     *
+     * @return the file, as a File
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the slot count, as an int
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Returns the size of each slot.
+     *
+     * @return the slot size in bytes, as an int
+     */
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    /**
+     * Checks whether the specified slot holds a saved game.
+     *
+     * @param slot the slot
+     *
+     * @return true if the slot holds a saved game, false otherwise
+     */
+    public synchronized boolean isUsed(int slot) {
+        return buffer.getInt(offset(slot)) == SLOT_USED;
+    }
+
+    /**
+     * Saves the specified game to the specified slot, replacing any game
+     * saved there.
+     *
+     * @param slot the slot
+     * @param game the game
+     * @param time the game time, in the units of the timer
+     *
+     * @return true if the game has been saved with its move history, false if
+     * the history did not fit and has been left out
+     *
+     * @throws IllegalStateException if the game's board data have never been
+     * reset
+     * @throws BufferOverflowException if not even the current arrangement
+     * fits in a slot, in which case the slot is left empty
+     */
+    public synchronized boolean save(int slot, Game game, double time) {
+        int offset = offset(slot);
+        buffer.putInt(offset, 0);
+        ByteBuffer data = slice(offset + SLOT_HEADER_SIZE, slotSize - SLOT_HEADER_SIZE);
+        boolean withHistory = true;
+        try {
+            game.save(data, true);
+        }
+        catch (BufferOverflowException e) {
+            // save the current arrangement only...
+            withHistory = false;
+            data.clear();
+            game.save(data, false);
+        }
+        buffer.putInt(offset + 4, data.position());
+        buffer.putDouble(offset + 8, time);
+        buffer.putInt(offset, SLOT_USED);
+        return withHistory;
+    }
+
+    /**
+     * Restores the game saved in the specified slot into the specified game.
+     *
+     * @param slot the slot
+     * @param game the game
+     *
+     * @return the saved game time, in the units of the timer, -1 if the slot
+     * is empty or holds a game of other dimensions
+     *
+     * @throws IOException if the slot does not hold a well-formed game
+     */
+    public synchronized double load(int slot, Game game) throws IOException {
+        int offset = offset(slot);
+        if (buffer.getInt(offset) != SLOT_USED) {
+            return -1;
+        }
+        int length = buffer.getInt(offset + 4);
+        if (length < 0 || length > slotSize - SLOT_HEADER_SIZE) {
+            throw new IOException("Corrupt slot " + slot + " in " + file);
+        }
+        try {
+            if (!game.restore(slice(offset + SLOT_HEADER_SIZE, length))) {
+                return -1;
+            }
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt slot " + slot + " in " + file + ": " + e.getMessage());
+        }
+        return buffer.getDouble(offset + 8);
+    }
+
+    /**
+     * Empties the specified slot.
+     *
+     * @param slot the slot
+     */
+    public synchronized void clear(int slot) {
+        buffer.putInt(offset(slot), 0);
+    }
+
+    /**
+     * Flushes all saved games to the storage device holding the file.
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    /**
+     * Returns the offset of the specified slot within the file.
+     *
+     * @param slot the slot
+     *
+     * @return the offset, as an int
+     *
+     * @throws IndexOutOfBoundsException if there is no such slot
+     */
+    private int offset(int slot) {
+        if (slot < 0 || slot >= slotCount) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " of " + slotCount);
+        }
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    /**
+     * Returns a buffer over the specified region of the mapping, its position
+     * at the region's start.
+     *
+     * @param offset the region's offset
+     * @param length the region's length
+     *
+     * @return the buffer, as a ByteBuffer
+     */
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer b = buffer.duplicate();
+        b.limit(offset + length);
+        b.position(offset);
+        return b.slice();
+    }
+
+    /**
+     * Opens the slot file at the specified path, creating it with the
+     * specified geometry if it does not exist, unless already opened.
+     *
+     * @param file the file
+     * @param slotCount the number of slots of a new file
+     * @param slotSize the size of each slot of a new file, in bytes
+     *
+     * @return the slot file, as a SaveSlots
+     *
+     * @throws IOException if the file cannot be read, written or created, or
+     * is not a slot file
+     */
+    public static SaveSlots open(File file, int slotCount, int slotSize) throws IOException {
+        String key = file.getCanonicalPath();
+        SaveSlots slots = opened.get(key);
+        if (slots == null) {
+            slots = map(file, slotCount, slotSize);
+            SaveSlots existing = opened.putIfAbsent(key, slots);
+            if (existing != null) {
+                slots = existing;
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Maps the specified file, creating and initializing it if empty, and
+     * parses its header.
+     *
+     * @param file the file
+     * @param slotCount the number of slots of a new file
+     * @param slotSize the size of each slot of a new file, in bytes
+     *
+     * @return the slot file, as a SaveSlots
+     *
+     * @throws IOException if the file cannot be read, written or created, or
+     * is not a slot file
+     */
+    private static SaveSlots map(File file, int slotCount, int slotSize) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() == 0) {
+                if (slotCount < 1 || slotSize < SLOT_HEADER_SIZE + 64 || (long) slotCount * slotSize > Integer.MAX_VALUE - HEADER_SIZE) {
+                    throw new IOException("Invalid slot file geometry: " + slotCount + " slots of " + slotSize + " bytes");
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotCount * slotSize);
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+                buffer.putInt(slotCount);
+                buffer.putInt(slotSize);
+                return new SaveSlots(file, slotCount, slotSize, buffer);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a slot file: " + file);
+            }
+            if (buffer.getInt() != VERSION) {
+                throw new IOException("Unsupported slot file version: " + file);
+            }
+            int count = buffer.getInt();
+            int size = buffer.getInt();
+            if (count < 1 || size < SLOT_HEADER_SIZE + 64 || buffer.capacity() != HEADER_SIZE + (long) count * size) {
+                throw new IOException("Truncated slot file: " + file);
+            }
+            return new SaveSlots(file, count, size, buffer);
+        }
+        finally {
+            // the mapping remains valid after the channel is closed...
+            raf.close();
+        }
+    }
+}
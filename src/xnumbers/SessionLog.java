@@ -0,0 +1,905 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>An append-only log of game sessions, for offline analysis of player
+ * behaviour.</p>
+ *
+ * <p>A session spans a game from its initial arrangement to its outcome.
+ * The log records the start of each session with the arrangement, every
+ * input fed to {@link Game#process(int)} during the session and the
+ * session's end with its outcome, each record stamped with the wall-clock
+ * time. Since the game logic is deterministic given the arrangement the game
+ * has started from and the moves made before the session, e.g. by a restored
+ * game, a session may be replayed exactly through
+ * {@link #replay(File, long)}.</p>
+ *
+ * <p>The file starts with a magic number and the format version, as ints,
+ * and is followed by records, each prefixed by its length so that readers
+ * may skip records of unknown types. A record consists of its type, as a
+ * byte, the time in milliseconds and the session id, as longs, and a
+ * type-specific payload:</p>
+ *
+ * <ul>
+ * <li>{@link #START}: the board's width, height and missing tile index, as
+ * shorts, the step count, as an int, the packed arrangement the game has
+ * started from, as written by {@link Board#writeTo(ByteBuffer)}, and the
+ * game's move history, as written by {@link MoveHistory#write(ByteBuffer)};
+ * the session starts from the arrangement the history's moves up to its
+ * position lead to;</li>
+ * <li>{@link #INPUT}: the button or tile index, as an int;</li>
+ * <li>{@link #END}: the outcome, as a byte, and the step count, as an
+ * int.</li>
+ * </ul>
+ *
+ * <p>Records are appended to an in-memory buffer, which a daemon thread
+ * writes to the file through a FileChannel every
+ * {@link #FLUSH_INTERVAL} milliseconds, or as soon as the buffer is half
+ * full, while further records go to another buffer. Recording therefore
+ * costs a few puts under an uncontended lock and never waits for the file.
+ * Should the writer fall
+ * behind by more than a few megabytes, e.g. when the device stalls, records
+ * are dropped and counted rather than held up. A record being written when the
+ * JVM dies may be left truncated, which readers treat as the end of the
+ * log.</p>
+ *
+ * <p>Logs are opened through {@link #open(File)}, which opens each file
+ * once per JVM and hands the same instance to all callers, so that any
+ * number of games may share a log. Recording is thread-safe.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class SessionLog {
+
+    /**
+     * File format magic number.
+     */
+    public static final int MAGIC = 0x584E534C;
+
+    /**
+     * File format version.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Record type: a session has started.
+     */
+    public static final int START = 0;
+
+    /**
+     * Record type: an input has been processed.
+     */
+    public static final int INPUT = 1;
+
+    /**
+     * Record type: a session has ended.
+     */
+    public static final int END = 2;
+
+    /**
+     * Outcome: the game has been solved.
+     */
+    public static final int SOLVED = 0;
+
+    /**
+     * Outcome: the game has been aborted by the player.
+     */
+    public static final int ABORTED = 1;
+
+    /**
+     * Outcome: the session has been cut short, e.g. by restoring a saved game
+     * or by the game shutting down.
+     */
+    public static final int INTERRUPTED = 2;
+
+    /**
+     * Maximum time records are buffered for, in milliseconds.
+     */
+    public static final long FLUSH_INTERVAL = 100;
+
+    /**
+     * Size of each buffer, in bytes.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Maximum number of buffers records may be appended to while the writer
+     * is behind.
+     */
+    private static final int MAX_BUFFERS = 32;
+
+    /**
+     * Size of a record's common part, i.e. the length, type, time and session
+     * id, in bytes.
+     */
+    private static final int RECORD_HEADER_SIZE = 21;
+
+    /**
+     * Logs opened so far, by canonical file path.
+     */
+    private static final ConcurrentMap<String, SessionLog> opened = new ConcurrentHashMap<String, SessionLog>();
+
+    /**
+     * The source of session ids, seeded from the clock so that ids from
+     * different runs are unlikely to collide.
+     */
+    private static final AtomicLong sessions = new AtomicLong(System.currentTimeMillis() << 16);
+
+    static {
+        // write what remains buffered when the JVM exits, where allowed...
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+                @Override public void run() {
+                    for (SessionLog log : opened.values()) {
+                        try {
+                            log.close();
+                        }
+                        catch (IOException e) {
+                            // nothing more to be done...
+                        }
+                    }
+                }
+            }, "XNumbers session log shutdown"));
+        }
+        catch (SecurityException e) {
+            // records buffered at exit are lost...
+        }
+    }
+
+    /**
+     * The file.
+     */
+    private final File file;
+
+    /**
+     * The channel the file is appended to through.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The buffer records are appended to.
+     */
+    private ByteBuffer active = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Buffers full of records, in order, waiting for the writer.
+     */
+    private final ArrayDeque<ByteBuffer> full = new ArrayDeque<ByteBuffer>();
+
+    /**
+     * Buffers written and ready for reuse.
+     */
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<ByteBuffer>();
+
+    /**
+     * Number of buffers allocated so far.
+     */
+    private int allocated = 1;
+
+    /**
+     * Number of records dropped for lack of buffer space.
+     */
+    private long dropped = 0;
+
+    /**
+     * Number of buffers written so far.
+     */
+    private long written = 0;
+
+    /**
+     * Whether the log has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * The writer thread.
+     */
+    private final Thread writer;
+
+    /**
+     * Creates a log appending to the specified channel, and starts its writer
+     * thread.
+     *
+     * @param file the file
+     * @param channel the channel, positioned at the end of the file
+     */
+    protected SessionLog(File file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+        writer = new Thread(new Runnable() {
+
+            @Override public void run() {
+                write();
+            }
+        }, "XNumbers session log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Returns the file.
+     *
+     * @return the file, as a File
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of records dropped for lack of buffer space.
+     *
+     * @return the number of records, as a long
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Records the start of a new session of a game.
+     *
+     * @param start the arrangement the game has started from
+     * @param history the game's move history, the session starting from the
+     * arrangement its moves up to its position lead to
+     * @param steps the step count the session starts from
+     *
+     * @return the session id, as a long
+     */
+    public long begin(Board start, MoveHistory history, int steps) {
+        long session = sessions.incrementAndGet();
+        synchronized (this) {
+            ByteBuffer b = reserve(START, session, 10 + start.getPackedSize() + history.getPackedSize());
+            if (b != null) {
+                b.putShort((short) start.getWidth());
+                b.putShort((short) start.getHeight());
+                b.putShort((short) start.getMissingTileIndex());
+                b.putInt(steps);
+                start.writeTo(b);
+                history.write(b);
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Records an input processed during the specified session.
+     *
+     * @param session the session id
+     * @param index the button or tile index
+     */
+    public synchronized void input(long session, int index) {
+        ByteBuffer b = reserve(INPUT, session, 4);
+        if (b != null) {
+            b.putInt(index);
+        }
+    }
+
+    /**
+     * Records the end of the specified session.
+     *
+     * @param session the session id
+     * @param outcome one of {@link #SOLVED}, {@link #ABORTED} and
+     * {@link #INTERRUPTED}
+     * @param steps the final step count
+     */
+    public synchronized void end(long session, int outcome, int steps) {
+        ByteBuffer b = reserve(END, session, 5);
+        if (b != null) {
+            b.put((byte) outcome);
+            b.putInt(steps);
+        }
+    }
+
+    /**
+     * Writes all records appended so far to the file, waiting for the writer
+     * thread to do so.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void flush() throws InterruptedException {
+        long target = written + full.size() + (active.position() != 0 ? 1 : 0);
+        notifyAll();
+        while (written < target && writer.isAlive()) {
+            wait(FLUSH_INTERVAL);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Writes all records appended so far to the file, stops the writer
+     * thread and closes the file. The log may not be recorded to afterwards.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        opened.remove(file.getCanonicalPath(), this);
+        channel.close();
+    }
+
+    /**
+     * Reserves space for a record in the active buffer, handing the buffer to
+     * the writer if full, and writes the record's common part. Must be called
+     * holding the log's lock.
+     *
+     * @param type the record type
+     * @param session the session id
+     * @param payload the size of the record's payload, in bytes
+     *
+     * @return the buffer to write the payload to, null if the record has been
+     * dropped
+     */
+    private ByteBuffer reserve(int type, long session, int payload) {
+        int size = RECORD_HEADER_SIZE + payload;
+        if (closed) {
+            dropped++;
+            return null;
+        }
+        if (active.remaining() < size) {
+            if (free.isEmpty() && allocated == MAX_BUFFERS) {
+                dropped++;
+                return null;
+            }
+            full.add(active);
+            active = nextBuffer();
+            notifyAll();
+        }
+        active.putInt(size - 4);
+        active.put((byte) type);
+        active.putLong(System.currentTimeMillis());
+        active.putLong(session);
+        if (active.position() > BUFFER_SIZE / 2 && full.isEmpty()) {
+            notifyAll();
+        }
+        return active;
+    }
+
+    /**
+     * Returns a buffer written and ready for reuse, or a new one if none is.
+     * Must be called holding the log's lock.
+     *
+     * @return the buffer, as a ByteBuffer
+     */
+    private ByteBuffer nextBuffer() {
+        ByteBuffer b = free.poll();
+        if (b == null) {
+            b = ByteBuffer.allocate(BUFFER_SIZE);
+            allocated++;
+        }
+        return b;
+    }
+
+    /**
+     * The writer thread's loop: hands buffers full of records to the channel
+     * until the log is closed.
+     */
+    private void write() {
+        while (true) {
+            ByteBuffer b;
+            boolean last;
+            synchronized (this) {
+                if (full.isEmpty() && !closed && active.position() <= BUFFER_SIZE / 2) {
+                    try {
+                        wait(FLUSH_INTERVAL);
+                    }
+                    catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                if (full.isEmpty() && active.position() != 0) {
+                    full.add(active);
+                    active = nextBuffer();
+                }
+                b = full.poll();
+                last = closed && active.position() == 0;
+            }
+            if (b != null) {
+                b.flip();
+                try {
+                    while (b.hasRemaining()) {
+                        channel.write(b);
+                    }
+                }
+                catch (IOException e) {
+                    // the records are lost, but recording goes on...
+                }
+                b.clear();
+                synchronized (this) {
+                    free.add(b);
+                    written++;
+                    notifyAll();
+                }
+            }
+            else if (last) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Opens the log at the specified path for appending, creating it if it
+     * does not exist, unless already opened.
+     *
+     * @param file the file
+     *
+     * @return the log, as a SessionLog
+     *
+     * @throws IOException if the file cannot be written or created, or is not
+     * a session log
+     */
+    public static SessionLog open(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        SessionLog log = opened.get(key);
+        if (log == null) {
+            synchronized (opened) {
+                log = opened.get(key);
+                if (log == null) {
+                    log = new SessionLog(file, append(file));
+                    opened.put(key, log);
+                }
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Opens the specified file for appending, writing the header to a new
+     * file and checking that of an existing one.
+     *
+     * @param file the file
+     *
+     * @return the channel, positioned at the end of the file
+     *
+     * @throws IOException if the file cannot be written or created, or is not
+     * a session log
+     */
+    private static FileChannel append(File file) throws IOException {
+        FileChannel channel = new FileOutputStream(file, true).getChannel();
+        boolean ok = false;
+        try {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            if (channel.size() == 0) {
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+            }
+            else {
+                Reader reader = new Reader(file);
+                reader.close();
+            }
+            ok = true;
+            return channel;
+        }
+        finally {
+            if (!ok) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Replays the specified session of the log held in the specified file
+     * against the game logic: starts a game on the arrangement, move history
+     * and step count the session has started from and processes the
+     * session's inputs in order.
+     *
+     * @param file the file
+     * @param session the session id
+     *
+     * @return the game as left by the session's inputs, as a Game, null if the
+     * log holds no such session
+     *
+     * @throws IOException if the file cannot be read or is not a session log
+     */
+    public static Game replay(File file, long session) throws IOException {
+        Reader reader = new Reader(file);
+        try {
+            Game game = null;
+            Record record = new Record();
+            while (reader.next(record)) {
+                if (record.getSession() != session) {
+                    continue;
+                }
+                switch (record.getType()) {
+                    case START:
+                        game = new Game(record.getWidth(), record.getHeight());
+                        game.startGame(record.getStart(), record.getHistory(), record.getSteps());
+                        break;
+                    case INPUT:
+                        if (game != null) {
+                            game.process(record.getInput());
+                        }
+                        break;
+                    case END:
+                        return game;
+                }
+            }
+            return game;
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * A record read from a log. Records are filled in by
+     * {@link Reader#next(Record)}, so that a single record may be reused to
+     * stream a whole log.
+     */
+    public static final class Record {
+
+        /**
+         * The record type.
+         */
+        private int type = -1;
+
+        /**
+         * The time, in milliseconds.
+         */
+        private long time = 0;
+
+        /**
+         * The session id.
+         */
+        private long session = 0;
+
+        /**
+         * The board's width, for a start record.
+         */
+        private int width = 0;
+
+        /**
+         * The board's height, for a start record.
+         */
+        private int height = 0;
+
+        /**
+         * The missing tile index, for a start record.
+         */
+        private int missingTileIndex = -1;
+
+        /**
+         * The step count, for a start or end record.
+         */
+        private int steps = 0;
+
+        /**
+         * The packed arrangement the game has started from and move history,
+         * for a start record.
+         */
+        private ByteBuffer cells = null;
+
+        /**
+         * The button or tile index, for an input record.
+         */
+        private int input = 0;
+
+        /**
+         * The outcome, for an end record.
+         */
+        private int outcome = -1;
+
+        /**
+         * Returns the record type.
+         *
+         * @return one of {@link SessionLog#START}, {@link SessionLog#INPUT}
+         * and {@link SessionLog#END}
+         */
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * Returns the time the record has been appended at.
+         *
+         * @return the time in milliseconds, as a long
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the session id.
+         *
+         * @return the session id, as a long
+         */
+        public long getSession() {
+            return session;
+        }
+
+        /**
+         * Returns the board's width, for a start record.
+         *
+         * @return the width, as an int
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Returns the board's height, for a start record.
+         *
+         * @return the height, as an int
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Returns the missing tile index, for a start record.
+         *
+         * @return the missing tile index, as an int
+         */
+        public int getMissingTileIndex() {
+            return missingTileIndex;
+        }
+
+        /**
+         * Returns the step count the session starts from, for a start record,
+         * or ends at, for an end record.
+         *
+         * @return the step count, as an int
+         */
+        public int getSteps() {
+            return steps;
+        }
+
+        /**
+         * Returns the arrangement the game has started from, for a start
+         * record.
+         *
+         * @return a new board, as a Board
+         *
+         * @throws IllegalArgumentException if the record does not hold a
+         * well-formed arrangement
+         */
+        public Board getStart() {
+            Board board = new Board(width, height, missingTileIndex);
+            board.readFrom(cells.duplicate(), missingTileIndex);
+            return board;
+        }
+
+        /**
+         * Returns the game's move history, for a start record.
+         *
+         * @return a new history, as a MoveHistory
+         *
+         * @throws IllegalArgumentException if the record does not hold a
+         * well-formed arrangement and history
+         */
+        public MoveHistory getHistory() {
+            Board board = new Board(width, height, missingTileIndex);
+            ByteBuffer b = cells.duplicate();
+            board.readFrom(b, missingTileIndex);
+            MoveHistory history = new MoveHistory();
+            history.read(b);
+            return history;
+        }
+
+        /**
+         * Returns the arrangement the session starts from, for a start
+         * record, i.e. the arrangement the game has started from with the
+         * moves of its history up to the history's position made.
+         *
+         * @return a new board, as a Board
+         *
+         * @throws IllegalArgumentException if the record does not hold a
+         * well-formed arrangement and history, or the history holds a move
+         * off the board
+         */
+        public Board getBoard() {
+            Board board = getStart();
+            MoveHistory history = getHistory();
+            int[] neighbours = Board.neighbours(width, height);
+            for (int i = 0; i != history.getPosition(); i++) {
+                int cell = neighbours[board.getFree() * 4 + history.get(i)];
+                if (cell == -1) {
+                    throw new IllegalArgumentException("Invalid move " + i);
+                }
+                board.move(board.get(cell));
+            }
+            return board;
+        }
+
+        /**
+         * Returns the button or tile index, for an input record.
+         *
+         * @return the index, as an int
+         */
+        public int getInput() {
+            return input;
+        }
+
+        /**
+         * Returns the outcome, for an end record.
+         *
+         * @return one of {@link SessionLog#SOLVED}, {@link SessionLog#ABORTED}
+         * and {@link SessionLog#INTERRUPTED}
+         */
+        public int getOutcome() {
+            return outcome;
+        }
+    }
+
+    /**
+     * A sequential reader of a log. Records of unknown types are skipped,
+     * and a record left truncated ends the log.
+     */
+    public static final class Reader implements Closeable {
+
+        /**
+         * The channel the file is read through.
+         */
+        private final FileChannel channel;
+
+        /**
+         * The read buffer.
+         */
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+        /**
+         * Creates a reader of the log held in the specified file.
+         *
+         * @param file the file
+         *
+         * @throws IOException if the file cannot be read or is not a session
+         * log
+         */
+        public Reader(File file) throws IOException {
+            channel = new FileInputStream(file).getChannel();
+            buffer.flip();
+            boolean ok = false;
+            try {
+                if (!fill(8) || buffer.getInt() != MAGIC) {
+                    throw new IOException("Not a session log: " + file);
+                }
+                if (buffer.getInt() != VERSION) {
+                    throw new IOException("Unsupported session log version: " + file);
+                }
+                ok = true;
+            }
+            finally {
+                if (!ok) {
+                    channel.close();
+                }
+            }
+        }
+
+        /**
+         * Reads the next record.
+         *
+         * @param record the record to fill in
+         *
+         * @return true if a record has been read, false at the end of the log
+         *
+         * @throws IOException if the file cannot be read
+         */
+        public boolean next(Record record) throws IOException {
+            while (true) {
+                if (!fill(4)) {
+                    return false;
+                }
+                int length = buffer.getInt();
+                if (length < RECORD_HEADER_SIZE - 4 || !fill(length)) {
+                    return false;
+                }
+                int end = buffer.position() + length;
+                int type = buffer.get();
+                record.type = type;
+                record.time = buffer.getLong();
+                record.session = buffer.getLong();
+                switch (type) {
+                    case START:
+                        record.width = buffer.getShort();
+                        record.height = buffer.getShort();
+                        record.missingTileIndex = buffer.getShort();
+                        record.steps = buffer.getInt();
+                        ByteBuffer cells = buffer.slice();
+                        cells.limit(end - buffer.position());
+                        if (record.cells == null || record.cells.capacity() < cells.remaining()) {
+                            record.cells = ByteBuffer.allocate(Math.max(cells.remaining(), 64));
+                        }
+                        record.cells.clear();
+                        record.cells.put(cells);
+                        record.cells.flip();
+                        break;
+                    case INPUT:
+                        record.input = buffer.getInt();
+                        break;
+                    case END:
+                        record.outcome = buffer.get();
+                        record.steps = buffer.getInt();
+                        break;
+                    default:
+                        buffer.position(end);
+                        continue;
+                }
+                buffer.position(end);
+                return true;
+            }
+        }
+
+        /**
+         * Closes the file.
+         *
+         * @throws IOException if the file cannot be closed
+         */
+        @Override public void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * Makes sure the buffer holds at least the specified number of bytes,
+         * reading more of the file and growing the buffer as needed.
+         *
+         * @param count the number of bytes
+         *
+         * @return true if the buffer holds the bytes, false if the file ends
+         * first
+         *
+         * @throws IOException if the file cannot be read
+         */
+        private boolean fill(int count) throws IOException {
+            if (buffer.remaining() >= count) {
+                return true;
+            }
+            buffer.compact();
+            if (buffer.capacity() < count) {
+                ByteBuffer b = ByteBuffer.allocate(count * 2);
+                buffer.flip();
+                b.put(buffer);
+                buffer = b;
+            }
+            while (buffer.position() < count) {
+                if (channel.read(buffer) == -1) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer.remaining() >= count;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.web3d.x3d.sai.MFString;
+import org.web3d.x3d.sai.SFImage;
+import org.web3d.x3d.sai.SFNode;
+import org.web3d.x3d.sai.SFVec3f;
+import org.web3d.x3d.sai.X3DExecutionContext;
+import org.web3d.x3d.sai.X3DNode;
+
+/**
+ * <p>Nodes that are the same for many buttons and many games, hence are
+ * created once and shared (i.e., the SAI equivalent of DEF/USE).</p>
+ *
+ * <p>Shared nodes are thread-safe, so that games initializing concurrently,
+ * e.g. from inline loader threads, create each node exactly once.</p>
+ *
+ * @see MaterialRegistry
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class SharedNodes {
+
+    /**
+     * Creates the materials of an execution context.
+     */
+    public interface MaterialFactory {
+
+        /**
+         * Creates the named materials.
+         *
+         * @param scene the current X3D execution context (i.e., scene)
+         *
+         * @return the map of named materials, as a Hashtable
+         */
+        Hashtable<String, X3DNode> createMaterials(X3DExecutionContext scene);
+    }
+
+    /**
+     * A map of named materials, null until created.
+     */
+    private volatile Hashtable<String, X3DNode> materials = null;
+
+    /**
+     * Appearances, by material.
+     */
+    private final Map<X3DNode, X3DNode> appearances = new IdentityHashMap<X3DNode, X3DNode>();
+
+    /**
+     * Box shapes, by material and dimensions.
+     */
+    private final Map<X3DNode, Map<String, X3DNode>> boxes = new IdentityHashMap<X3DNode, Map<String, X3DNode>>();
+
+    /**
+     * Mesh appearances, by number of tiles.
+     */
+    private final Map<Integer, X3DNode> meshAppearances = new HashMap<Integer, X3DNode>();
+
+    /**
+     * The font style.
+     */
+    private X3DNode fontStyle = null;
+
+    /**
+     * Returns the map of named materials, creating the materials by the
+     * specified factory if not yet created. The materials are created once,
+     * however many games ask for them concurrently.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     * @param factory the factory creating the materials
+     *
+     * @return the map, as a Hashtable
+     */
+    public Hashtable<String, X3DNode> getMaterials(X3DExecutionContext scene, MaterialFactory factory) {
+        Hashtable<String, X3DNode> m = materials;
+        if (m == null) {
+            synchronized (this) {
+                m = materials;
+                if (m == null) {
+                    m = factory.createMaterials(scene);
+                    materials = m;
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Returns the appearance with the specified material, creating it if
+     * needed.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     * @param material the material, as an X3DNode
+     *
+     * @return the appearance, as an X3DNode
+     */
+    public synchronized X3DNode getAppearance(X3DExecutionContext scene, X3DNode material) {
+        X3DNode appearance = appearances.get(material);
+        if (appearance == null) {
+            appearance = scene.createNode("Appearance");
+            ((SFNode) appearance.getField("material")).setValue(material);
+            appearances.put(material, appearance);
+        }
+        return appearance;
+    }
+
+    /**
+     * Returns the box shape with the specified dimensions and material,
+     * creating it if needed.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     * @param size the box's dimensions, as an array of three floats
+     * corresponding to x, y and z components
+     * @param material the box's material, as an X3DNode
+     *
+     * @return the box shape, as an X3DNode
+     */
+    public synchronized X3DNode getBox(X3DExecutionContext scene, float[] size, X3DNode material) {
+        Map<String, X3DNode> shapes = boxes.get(material);
+        if (shapes == null) {
+            shapes = new HashMap<String, X3DNode>();
+            boxes.put(material, shapes);
+        }
+        String key = size[0] + " " + size[1] + " " + size[2];
+        X3DNode shape = shapes.get(key);
+        if (shape == null) {
+            X3DNode box = scene.createNode("Box");
+            ((SFVec3f) box.getField("size")).setValue(size);
+            shape = scene.createNode("Shape");
+            ((SFNode) shape.getField("appearance")).setValue(getAppearance(scene, material));
+            ((SFNode) shape.getField("geometry")).setValue(box);
+            shapes.put(key, shape);
+        }
+        return shape;
+    }
+
+    /**
+     * Returns the mesh appearance for as many tiles as the specified label
+     * atlas has labels, textured by the atlas, creating it if needed.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     * @param atlas the label atlas
+     * @param material the material, as an X3DNode
+     *
+     * @return the appearance, as an X3DNode
+     */
+    public synchronized X3DNode getMeshAppearance(X3DExecutionContext scene, LabelAtlas atlas, X3DNode material) {
+        X3DNode appearance = meshAppearances.get(atlas.getCount());
+        if (appearance == null) {
+            X3DNode texture = scene.createNode("PixelTexture");
+            ((SFImage) texture.getField("image")).setValue(atlas.getWidth(), atlas.getHeight(), 3, atlas.getPixels());
+            appearance = scene.createNode("Appearance");
+            ((SFNode) appearance.getField("material")).setValue(material);
+            ((SFNode) appearance.getField("texture")).setValue(texture);
+            meshAppearances.put(atlas.getCount(), appearance);
+        }
+        return appearance;
+    }
+
+    /**
+     * Returns the font style, creating it if needed.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     *
+     * @return the font style, as an X3DNode
+     */
+    public synchronized X3DNode getFontStyle(X3DExecutionContext scene) {
+        if (fontStyle == null) {
+            fontStyle = scene.createNode("FontStyle");
+            ((MFString) fontStyle.getField("justify")).setValue(1, new String[]{"MIDDLE"});
+        }
+        return fontStyle;
+    }
+}
@@ -0,0 +1,393 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * <p>An optimal XNumbers solver based on Iterative-Deepening A* (IDA*).</p>
+ *
+ * <p>Boards are given in the same form as the game's board data: a flattened
+ * array holding the index of the tile at each cell, or -1 for the free cell.
+ * A board is solved when every tile is at the cell of the same index, the
+ * free cell being the cell of the missing tile index.</p>
+ *
+ * <p>The solver works on a private copy of the board and keeps its heuristic
+ * up-to-date incrementally as moves are applied and undone, so that no
+ * objects are allocated per expanded node. Since optimal search is
+ * exponential in solution length, the number of expanded nodes may be bounded
+ * so that callers get a timely answer on large boards, and a search may be
+ * cancelled from another thread.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class Solver {
+
+    /**
+     * Default maximum number of nodes to expand per solution attempt.
+     */
+    public static final long DEFAULT_NODE_LIMIT = 50000000L;
+
+    /**
+     * Search result denoting that the goal has been found.
+     */
+    private static final int FOUND = -1;
+
+    /**
+     * Search result denoting that the node limit has been reached.
+     */
+    private static final int ABORTED = -2;
+
+    /**
+     * Search result denoting that no node exceeded the current bound.
+     */
+    private static final int EXHAUSTED = Integer.MAX_VALUE;
+
+    /**
+     * The board's width.
+     */
+    private final int width;
+
+    /**
+     * The board's height.
+     */
+    private final int height;
+
+    /**
+     * The missing tile index.
+     */
+    private final int missingTileIndex;
+
+    /**
+     * The heuristic guiding the search.
+     */
+    private final Heuristic heuristic;
+
+    /**
+     * The neighbours of each cell, four entries per cell in up, down, left,
+     * right order, -1 denoting no neighbour.
+     */
+    private final int[] neighbours;
+
+    /**
+     * The working copy of the board's cells.
+     */
+    private final int[] cells;
+
+    /**
+     * The working copy of the board's tile positions.
+     */
+    private final int[] positions;
+
+    /**
+     * The free cell of the working copy.
+     */
+    private int free = -1;
+
+    /**
+     * The heuristic estimate for the working copy.
+     */
+    private int estimate = 0;
+
+    /**
+     * The tiles moved along the current search path.
+     */
+    private int[] path = new int[64];
+
+    /**
+     * Maximum number of nodes to expand per solution attempt.
+     */
+    private long nodeLimit = DEFAULT_NODE_LIMIT;
+
+    /**
+     * Number of nodes expanded by the last solution attempt.
+     */
+    private long nodeCount = 0;
+
+    /**
+     * Length of the solution found by the last solution attempt.
+     */
+    private int solutionLength = 0;
+
+    /**
+     * Whether solution attempts have been cancelled.
+     */
+    private volatile boolean cancelled = false;
+
+    /**
+     * Creates a solver for boards of the specified dimensions, guided by the
+     * Manhattan distance and linear conflicts.
+     *
+     * @param width the board's width
+     * @param height the board's height
+     * @param missingTileIndex the missing tile index
+     */
+    public Solver(int width, int height, int missingTileIndex) {
+        this(width, height, missingTileIndex, new LinearConflictHeuristic(width, height, missingTileIndex));
+    }
+
+    /**
+     * Creates a solver for boards of the specified dimensions, guided by the
+     * specified heuristic.
+     *
+     * @param width the board's width
+     * @param height the board's height
+     * @param missingTileIndex the missing tile index
+     * @param heuristic the heuristic, which must be admissible for the search
+     * to be optimal
+     */
+    public Solver(int width, int height, int missingTileIndex, Heuristic heuristic) {
+        this.width = width;
+        this.height = height;
+        this.missingTileIndex = missingTileIndex;
+        this.heuristic = heuristic;
+        int size = width * height;
+        cells = new int[size];
+        positions = new int[size];
+        neighbours = Board.neighbours(width, height);
+    }
+
+    /**
+     * Sets the maximum number of nodes to expand per solution attempt.
+     *
+     * @param nodeLimit the node limit, non-positive for no limit
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit > 0 ? nodeLimit : Long.MAX_VALUE;
+    }
+
+    /**
+     * Cancels the current and any further solution attempts, which then fail
+     * as if the node limit had been reached. May be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks whether solution attempts have been cancelled.
+     *
+     * @return true if cancelled, false otherwise
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns the number of nodes expanded by the last solution attempt.
+     *
+     * @return the node count, as a long
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Computes an optimal solution for the specified board.
+     *
+     * @param board the board, as an int[]
+     *
+     * @return the indices of the tiles to move in order, as an int[], or null
+     * if the board is unsolvable or the node limit has been reached
+     */
+    public int[] solve(int[] board) {
+        nodeCount = 0;
+        if (!load(board) || !isSolvable(board, width, height, missingTileIndex)) {
+            return null;
+        }
+        int bound = estimate;
+        while (true) {
+            if (path.length <= bound) {
+                path = new int[bound * 2];
+            }
+            int result = search(0, bound, -1);
+            if (result == FOUND) {
+                int[] solution = new int[solutionLength];
+                System.arraycopy(path, 0, solution, 0, solutionLength);
+                return solution;
+            }
+            if (result == ABORTED || result == EXHAUSTED) {
+                return null;
+            }
+            bound = result;
+        }
+    }
+
+    /**
+     * Computes the length of an optimal solution for the specified board,
+     * provided it does not exceed the specified length. Searching stops at
+     * that length, hence proving that a board is farther from the goal costs
+     * no more than solving a board at that distance.
+     *
+     * @param board the board, as an int[]
+     * @param maxLength the largest solution length of interest
+     *
+     * @return the length of an optimal solution, -1 if it exceeds the
+     * specified length, -2 if the board is unsolvable or the node limit has
+     * been reached
+     */
+    public int distance(int[] board, int maxLength) {
+        nodeCount = 0;
+        if (!load(board) || !isSolvable(board, width, height, missingTileIndex)) {
+            return -2;
+        }
+        int bound = estimate;
+        while (bound <= maxLength) {
+            if (path.length <= bound) {
+                path = new int[bound * 2];
+            }
+            int result = search(0, bound, -1);
+            if (result == FOUND) {
+                return solutionLength;
+            }
+            if (result == ABORTED) {
+                return -2;
+            }
+            if (result == EXHAUSTED) {
+                return -1;
+            }
+            bound = result;
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the first move of an optimal solution for the specified board.
+     *
+     * @param board the board, as an int[]
+     *
+     * @return the index of the tile to move, -1 if the board is already
+     * solved, unsolvable or the node limit has been reached
+     */
+    public int nextMove(int[] board) {
+        int[] solution = solve(board);
+        return solution != null && solution.length != 0 ? solution[0] : -1;
+    }
+
+    /**
+     * Checks whether the specified board can be solved.
+     *
+     * @param board the board, as an int[]
+     * @param width the board's width
+     * @param height the board's height
+     * @param missingTileIndex the missing tile index
+     *
+     * @return true if the board is solvable, false otherwise
+     *
+     * @see Permutations#isSolvable(int[], int, int)
+     */
+    public static boolean isSolvable(int[] board, int width, int height, int missingTileIndex) {
+        int[] cells = new int[board.length];
+        for (int i = 0; i != board.length; i++) {
+            cells[i] = board[i] == -1 ? missingTileIndex : board[i];
+        }
+        return Permutations.isSolvable(cells, width, missingTileIndex);
+    }
+
+    /**
+     * Loads the specified board into the working copy and initializes the
+     * heuristic.
+     *
+     * @param board the board, as an int[]
+     *
+     * @return true if the board is well-formed, false otherwise
+     */
+    private boolean load(int[] board) {
+        if (board.length != cells.length) {
+            return false;
+        }
+        free = -1;
+        for (int i = 0; i != board.length; i++) {
+            cells[i] = board[i];
+            if (board[i] == -1) {
+                free = i;
+                positions[missingTileIndex] = i;
+            }
+            else {
+                positions[board[i]] = i;
+            }
+        }
+        if (free == -1) {
+            return false;
+        }
+        estimate = heuristic.initialize(cells, positions);
+        return true;
+    }
+
+    /**
+     * The recursive IDA* step.
+     *
+     * @param depth the current depth (i.e., path cost)
+     * @param bound the current cost bound
+     * @param previous the free cell before the last move, so that the last
+     * move is never immediately undone
+     *
+     * @return {@link #FOUND}, {@link #ABORTED} or the smallest cost exceeding
+     * the bound
+     */
+    private int search(int depth, int bound, int previous) {
+        int cost = depth + estimate;
+        if (cost > bound) {
+            return cost;
+        }
+        if (estimate == 0) {
+            solutionLength = depth;
+            return FOUND;
+        }
+        // the cancellation flag is only polled every so many nodes, so that
+        // the search is not slowed down by volatile reads...
+        if (++nodeCount > nodeLimit || ((nodeCount & 0x3FF) == 0 && cancelled)) {
+            return ABORTED;
+        }
+        int min = EXHAUSTED;
+        int origin = free;
+        for (int d = 0; d != 4; d++) {
+            int cell = neighbours[origin * 4 + d];
+            if (cell == -1 || cell == previous) {
+                continue;
+            }
+            int tile = cells[cell];
+            int saved = estimate;
+            // slide the tile into the free cell...
+            cells[origin] = tile;
+            cells[cell] = -1;
+            positions[tile] = origin;
+            positions[missingTileIndex] = cell;
+            free = cell;
+            estimate = heuristic.update(tile, cell, origin);
+            path[depth] = tile;
+            int result = search(depth + 1, bound, origin);
+            // ...and back...
+            cells[cell] = tile;
+            cells[origin] = -1;
+            positions[tile] = cell;
+            positions[missingTileIndex] = origin;
+            free = origin;
+            heuristic.update(tile, origin, cell);
+            estimate = saved;
+            if (result == FOUND || result == ABORTED) {
+                return result;
+            }
+            if (result < min) {
+                min = result;
+            }
+        }
+        return min;
+    }
+}
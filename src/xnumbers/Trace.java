@@ -0,0 +1,208 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+/**
+ * <p>An in-memory ring buffer of structured trace events.</p>
+ *
+ * <p>Each event consists of a timestamp, an event code and two integer
+ * arguments, stored in preallocated parallel arrays, so that recording an
+ * event allocates nothing and formatting is deferred until the buffer is
+ * dumped. Once full, the buffer overwrites its oldest events. A disabled
+ * trace costs a single branch per event.</p>
+ *
+ * <p>Traces are not thread-safe and are meant to be recorded to from the
+ * browser's event delivery only.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class Trace {
+
+    /**
+     * Event: a click or TouchSensor event has been received (button id, 1 if
+     * from a TouchSensor, 0 otherwise).
+     */
+    public static final int EVENT = 0;
+
+    /**
+     * Event: a button or tile click is being processed (button id, state).
+     */
+    public static final int PROCESS = 1;
+
+    /**
+     * Event: board data have been reset (missing tile index, 0) or restored
+     * (missing tile index, 1).
+     */
+    public static final int RESET = 2;
+
+    /**
+     * Event: a shuffle step has been performed (step, cell moved into the
+     * free cell).
+     */
+    public static final int SHUFFLE = 3;
+
+    /**
+     * Event: the player has moved a tile (tile index, cell moved from, -1 if
+     * the move was illegal).
+     */
+    public static final int MOVE = 4;
+
+    /**
+     * Event: the game's state has changed (old state, new state).
+     */
+    public static final int STATE = 5;
+
+    /**
+     * Event: pending field writes have been committed (number of writes, 0).
+     */
+    public static final int FLUSH = 6;
+
+    /**
+     * Event: a hint has been requested (0, 0) or applied (tile index, 1).
+     */
+    public static final int HINT = 7;
+
+    /**
+     * Event: the pattern databases could not be read or do not fit the board
+     * (missing tile index, 0), or were not found (missing tile index, 1), the
+     * solver falling back to the default heuristic.
+     */
+    public static final int HEURISTIC = 8;
+
+    /**
+     * Event names, by code.
+     */
+    private static final String[] NAMES = new String[]{
+        "EVENT", "PROCESS", "RESET", "SHUFFLE", "MOVE", "STATE", "FLUSH", "HINT", "HEURISTIC"
+    };
+
+    /**
+     * Whether events are recorded.
+     */
+    private final boolean enabled;
+
+    /**
+     * Index mask of the buffer.
+     */
+    private final int mask;
+
+    /**
+     * Event timestamps, in nanoseconds.
+     */
+    private final long[] times;
+
+    /**
+     * Event codes.
+     */
+    private final int[] codes;
+
+    /**
+     * First event arguments.
+     */
+    private final int[] args1;
+
+    /**
+     * Second event arguments.
+     */
+    private final int[] args2;
+
+    /**
+     * Number of events recorded so far, including overwritten ones.
+     */
+    private long count = 0;
+
+    /**
+     * Creates a trace holding up to the specified number of events, rounded
+     * up to a power of two.
+     *
+     * @param capacity the number of events to hold, 0 for a disabled trace
+     */
+    public Trace(int capacity) {
+        enabled = capacity > 0;
+        int size = enabled ? Integer.highestOneBit(Math.max(1, capacity - 1)) << 1 : 0;
+        mask = size - 1;
+        times = new long[size];
+        codes = new int[size];
+        args1 = new int[size];
+        args2 = new int[size];
+    }
+
+    /**
+     * Checks whether events are recorded.
+     *
+     * @return true if events are recorded, false otherwise
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param code the event code
+     * @param arg1 the first argument
+     * @param arg2 the second argument
+     */
+    public void record(int code, int arg1, int arg2) {
+        if (enabled) {
+            int i = (int) count & mask;
+            times[i] = System.nanoTime();
+            codes[i] = code;
+            args1[i] = arg1;
+            args2[i] = arg2;
+            count++;
+        }
+    }
+
+    /**
+     * Returns the number of events currently held.
+     *
+     * @return the number of events, as an int
+     */
+    public int size() {
+        return (int) Math.min(count, times.length);
+    }
+
+    /**
+     * Discards all events.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Formats a held event, oldest first.
+     *
+     * @param index the index of the event among those held, 0 being the
+     * oldest
+     *
+     * @return a readable representation of the event, as a String
+     */
+    public String format(int index) {
+        long first = count - size();
+        int i = (int) (first + index) & mask;
+        int base = (int) first & mask;
+        String name = codes[i] >= 0 && codes[i] < NAMES.length ? NAMES[codes[i]] : String.valueOf(codes[i]);
+        return "#" + (first + index) +
+            " +" + ((times[i] - times[base]) / 1000) + "us " +
+            name + " " + args1[i] + " " + args2[i];
+    }
+}
@@ -0,0 +1,519 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.web3d.x3d.sai.Browser;
+import org.web3d.x3d.sai.MFInt32;
+import org.web3d.x3d.sai.MFString;
+import org.web3d.x3d.sai.MFVec3f;
+import org.web3d.x3d.sai.SFBool;
+import org.web3d.x3d.sai.SFInt32;
+import org.web3d.x3d.sai.SFTime;
+import org.web3d.x3d.sai.SFVec3f;
+import org.web3d.x3d.sai.X3DField;
+
+/**
+ * <p>A queue of pending field writes, committed to the browser in one batch.</p>
+ *
+ * <p>Writes to the same field are coalesced, only the latest value being
+ * committed. Single-value writes to MFInt32 and MFVec3f fields are tracked per
+ * index and committed as such, unless most of the field has changed, in which
+ * case the whole field is written at once. The commit is bracketed by
+ * {@link Browser#beginUpdate()} and {@link Browser#endUpdate()}, so that the
+ * browser propagates all changes as a single scene update.</p>
+ *
+ * <p>Pending entries are kept per field and reused across commits, so that
+ * steady-state queuing does not allocate, until pruned, e.g. when the fields
+ * are discarded along with the model.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class UpdateQueue {
+
+    /**
+     * A pending write to a field.
+     */
+    private static abstract class Update {
+
+        /**
+         * Whether the update is currently queued.
+         */
+        boolean queued = false;
+
+        /**
+         * Writes the pending value to the field.
+         *
+         * @return the number of field writes performed
+         */
+        abstract int commit();
+    }
+
+    /**
+     * A pending SFVec3f write.
+     */
+    private static final class Vec3fUpdate extends Update {
+        final SFVec3f field;
+        final float[] value = new float[3];
+        Vec3fUpdate(SFVec3f field) {
+            this.field = field;
+        }
+        @Override int commit() {
+            field.setValue(value);
+            return 1;
+        }
+    }
+
+    /**
+     * A pending SFBool write.
+     */
+    private static final class BoolUpdate extends Update {
+        final SFBool field;
+        boolean value = false;
+        BoolUpdate(SFBool field) {
+            this.field = field;
+        }
+        @Override int commit() {
+            field.setValue(value);
+            return 1;
+        }
+    }
+
+    /**
+     * A pending SFInt32 write.
+     */
+    private static final class IntUpdate extends Update {
+        final SFInt32 field;
+        int value = 0;
+        IntUpdate(SFInt32 field) {
+            this.field = field;
+        }
+        @Override int commit() {
+            field.setValue(value);
+            return 1;
+        }
+    }
+
+    /**
+     * A pending SFTime write.
+     */
+    private static final class TimeUpdate extends Update {
+        final SFTime field;
+        double value = 0;
+        TimeUpdate(SFTime field) {
+            this.field = field;
+        }
+        @Override int commit() {
+            field.setValue(value);
+            return 1;
+        }
+    }
+
+    /**
+     * A pending single-string MFString write.
+     */
+    private static final class StringUpdate extends Update {
+        final MFString field;
+        final String[] value = new String[1];
+        StringUpdate(MFString field) {
+            this.field = field;
+        }
+        @Override int commit() {
+            field.setValue(1, value);
+            return 1;
+        }
+    }
+
+    /**
+     * A pending MFInt32 write, either whole or per index.
+     */
+    private static final class Int32Update extends Update {
+        final MFInt32 field;
+        int[] value = new int[0];
+        boolean whole = false;
+        boolean[] dirty = new boolean[0];
+        int[] dirtyIndices = new int[0];
+        int dirtyCount = 0;
+        Int32Update(MFInt32 field) {
+            this.field = field;
+        }
+        void resize(int size) {
+            if (value.length != size) {
+                int[] v = new int[size];
+                System.arraycopy(value, 0, v, 0, Math.min(size, value.length));
+                value = v;
+                dirty = new boolean[size];
+                dirtyIndices = new int[size];
+                dirtyCount = 0;
+                whole = true;
+            }
+        }
+        @Override int commit() {
+            int writes;
+            if (whole || dirtyCount > value.length / 2) {
+                field.setValue(value.length, value);
+                writes = 1;
+            }
+            else {
+                for (int i = 0; i != dirtyCount; i++) {
+                    field.set1Value(dirtyIndices[i], value[dirtyIndices[i]]);
+                }
+                writes = dirtyCount;
+            }
+            for (int i = 0; i != dirtyCount; i++) {
+                dirty[dirtyIndices[i]] = false;
+            }
+            dirtyCount = 0;
+            whole = false;
+            return writes;
+        }
+    }
+
+    /**
+     * A pending MFVec3f write, either whole or per index.
+     */
+    private static final class Vec3fArrayUpdate extends Update {
+        final MFVec3f field;
+        float[] value = new float[0];
+        final float[] single = new float[3];
+        boolean whole = false;
+        boolean[] dirty = new boolean[0];
+        int[] dirtyIndices = new int[0];
+        int dirtyCount = 0;
+        Vec3fArrayUpdate(MFVec3f field) {
+            this.field = field;
+        }
+        void resize(int size) {
+            if (value.length != size * 3) {
+                float[] v = new float[size * 3];
+                System.arraycopy(value, 0, v, 0, Math.min(v.length, value.length));
+                value = v;
+                dirty = new boolean[size];
+                dirtyIndices = new int[size];
+                dirtyCount = 0;
+                whole = true;
+            }
+        }
+        @Override int commit() {
+            int writes;
+            if (whole || dirtyCount > dirty.length / 2) {
+                field.setValue(dirty.length, value);
+                writes = 1;
+            }
+            else {
+                for (int i = 0; i != dirtyCount; i++) {
+                    System.arraycopy(value, dirtyIndices[i] * 3, single, 0, 3);
+                    field.set1Value(dirtyIndices[i], single);
+                }
+                writes = dirtyCount;
+            }
+            for (int i = 0; i != dirtyCount; i++) {
+                dirty[dirtyIndices[i]] = false;
+            }
+            dirtyCount = 0;
+            whole = false;
+            return writes;
+        }
+    }
+
+    /**
+     * Pending entries by field.
+     */
+    private final Map<X3DField, Update> entries = new IdentityHashMap<X3DField, Update>();
+
+    /**
+     * Queued entries, in order of first write.
+     */
+    private final ArrayList<Update> queue = new ArrayList<Update>();
+
+    /**
+     * Queues a write to an SFVec3f field.
+     *
+     * @param field the field
+     * @param value the value, as an array of three floats
+     */
+    public void setValue(SFVec3f field, float[] value) {
+        Vec3fUpdate u = (Vec3fUpdate) entries.get(field);
+        if (u == null) {
+            u = new Vec3fUpdate(field);
+            entries.put(field, u);
+        }
+        u.value[0] = value[0];
+        u.value[1] = value[1];
+        u.value[2] = value[2];
+        enqueue(u);
+    }
+
+    /**
+     * Queues a write to an SFBool field.
+     *
+     * @param field the field
+     * @param value the value
+     */
+    public void setValue(SFBool field, boolean value) {
+        BoolUpdate u = (BoolUpdate) entries.get(field);
+        if (u == null) {
+            u = new BoolUpdate(field);
+            entries.put(field, u);
+        }
+        u.value = value;
+        enqueue(u);
+    }
+
+    /**
+     * Queues a write to an SFInt32 field.
+     *
+     * @param field the field
+     * @param value the value
+     */
+    public void setValue(SFInt32 field, int value) {
+        IntUpdate u = (IntUpdate) entries.get(field);
+        if (u == null) {
+            u = new IntUpdate(field);
+            entries.put(field, u);
+        }
+        u.value = value;
+        enqueue(u);
+    }
+
+    /**
+     * Queues a write to an SFTime field.
+     *
+     * @param field the field
+     * @param value the value
+     */
+    public void setValue(SFTime field, double value) {
+        TimeUpdate u = (TimeUpdate) entries.get(field);
+        if (u == null) {
+            u = new TimeUpdate(field);
+            entries.put(field, u);
+        }
+        u.value = value;
+        enqueue(u);
+    }
+
+    /**
+     * Queues a write of a single string to an MFString field.
+     *
+     * @param field the field
+     * @param value the string
+     */
+    public void setValue(MFString field, String value) {
+        StringUpdate u = (StringUpdate) entries.get(field);
+        if (u == null) {
+            u = new StringUpdate(field);
+            entries.put(field, u);
+        }
+        u.value[0] = value;
+        enqueue(u);
+    }
+
+    /**
+     * Queues a write of all values of an MFInt32 field.
+     *
+     * @param field the field
+     * @param value the values, as an int[]
+     */
+    public void setValue(MFInt32 field, int[] value) {
+        Int32Update u = int32Update(field);
+        u.resize(value.length);
+        System.arraycopy(value, 0, u.value, 0, value.length);
+        u.whole = true;
+        enqueue(u);
+    }
+
+    /**
+     * Queues a write of a single value of an MFInt32 field. The field must
+     * have been written as a whole through this queue before.
+     *
+     * @param field the field
+     * @param index the index of the value
+     * @param value the value
+     */
+    public void set1Value(MFInt32 field, int index, int value) {
+        Int32Update u = int32Update(field);
+        u.value[index] = value;
+        if (!u.dirty[index]) {
+            u.dirty[index] = true;
+            u.dirtyIndices[u.dirtyCount++] = index;
+        }
+        enqueue(u);
+    }
+
+    /**
+     * Queues a write of all values of an MFVec3f field.
+     *
+     * @param field the field
+     * @param value the values, flattened into an array of three floats per
+     * vector
+     */
+    public void setValue(MFVec3f field, float[] value) {
+        Vec3fArrayUpdate u = vec3fArrayUpdate(field);
+        u.resize(value.length / 3);
+        System.arraycopy(value, 0, u.value, 0, value.length);
+        u.whole = true;
+        enqueue(u);
+    }
+
+    /**
+     * Queues a write of a single value of an MFVec3f field. The field must
+     * have been written as a whole through this queue before.
+     *
+     * @param field the field
+     * @param index the index of the value
+     * @param x the x component of the value
+     * @param y the y component of the value
+     * @param z the z component of the value
+     */
+    public void set1Value(MFVec3f field, int index, float x, float y, float z) {
+        Vec3fArrayUpdate u = vec3fArrayUpdate(field);
+        u.value[index * 3] = x;
+        u.value[index * 3 + 1] = y;
+        u.value[index * 3 + 2] = z;
+        if (!u.dirty[index]) {
+            u.dirty[index] = true;
+            u.dirtyIndices[u.dirtyCount++] = index;
+        }
+        enqueue(u);
+    }
+
+    /**
+     * Checks whether any writes are pending.
+     *
+     * @return true if no writes are pending, false otherwise
+     */
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Commits all pending writes to the browser as a single update. Should a
+     * write fail, e.g. to a field of a node removed meanwhile, the remaining
+     * writes are still committed, and the first failure is rethrown once all
+     * have been attempted; the failed write is retried along with the next
+     * write queued to its field.
+     *
+     * @param browser the browser
+     *
+     * @return the number of field writes performed
+     *
+     * @throws RuntimeException the first failure of a write, if any
+     */
+    public int flush(Browser browser) {
+        if (queue.isEmpty()) {
+            return 0;
+        }
+        int writes = 0;
+        RuntimeException failure = null;
+        browser.beginUpdate();
+        try {
+            for (int i = 0; i != queue.size(); i++) {
+                Update u = queue.get(i);
+                u.queued = false;
+                try {
+                    writes += u.commit();
+                }
+                catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        }
+        finally {
+            queue.clear();
+            browser.endUpdate();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return writes;
+    }
+
+    /**
+     * Drops the entries of all fields without pending writes, e.g. before
+     * the model is rebuilt, so that the entries of discarded fields are not
+     * kept. Pending writes are committed as usual.
+     */
+    public void prune() {
+        for (Iterator<Update> i = entries.values().iterator(); i.hasNext(); ) {
+            if (!i.next().queued) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Discards all pending writes, along with the entries of all fields.
+     */
+    public void clear() {
+        queue.clear();
+        entries.clear();
+    }
+
+    /**
+     * Returns the pending entry of an MFInt32 field, creating it if needed.
+     *
+     * @param field the field
+     *
+     * @return the entry, as an Int32Update
+     */
+    private Int32Update int32Update(MFInt32 field) {
+        Int32Update u = (Int32Update) entries.get(field);
+        if (u == null) {
+            u = new Int32Update(field);
+            entries.put(field, u);
+        }
+        return u;
+    }
+
+    /**
+     * Returns the pending entry of an MFVec3f field, creating it if needed.
+     *
+     * @param field the field
+     *
+     * @return the entry, as a Vec3fArrayUpdate
+     */
+    private Vec3fArrayUpdate vec3fArrayUpdate(MFVec3f field) {
+        Vec3fArrayUpdate u = (Vec3fArrayUpdate) entries.get(field);
+        if (u == null) {
+            u = new Vec3fArrayUpdate(field);
+            entries.put(field, u);
+        }
+        return u;
+    }
+
+    /**
+     * Queues the specified entry, unless already queued.
+     *
+     * @param u the entry
+     */
+    private void enqueue(Update u) {
+        if (!u.queued) {
+            u.queued = true;
+            queue.add(u);
+        }
+    }
+}
@@ -19,6 +19,8 @@ package xnumbers;
  * along with XNumbers. If not, see http://www.gnu.org/licenses/.
  */
 
+import java.io.File;
+import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -46,7 +48,9 @@ import org.web3d.x3d.sai.SFTime;
 import org.web3d.x3d.sai.SFBool;
 import org.web3d.x3d.sai.SFString;
 import org.web3d.x3d.sai.MFInt32;
+import org.web3d.x3d.sai.MFVec2f;
 import org.web3d.x3d.sai.MFVec3f;
+import org.web3d.x3d.sai.X3DRoute;
 
 /**
  * <p>The implementation of an externally-scripted X3D Script node for XNumbers.</p>
@@ -59,12 +63,67 @@ import org.web3d.x3d.sai.MFVec3f;
  * @author George Anastassakis
  * @version 1.0
  */
-public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener {
+public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener, GameListener {
 
     /**
      * Default new game shuffle depth.
      */
-    public static final int DEFAULT_SHUFFLE_DEPTH = 25;
+    public static final int DEFAULT_SHUFFLE_DEPTH = Game.DEFAULT_SHUFFLE_DEPTH;
+
+    /**
+     * Scale of visible tiles.
+     */
+    private static final float[] SCALE_SHOWN = new float[]{1.0f, 1.0f, 1.0f};
+
+    /**
+     * Scale of hidden tiles.
+     */
+    private static final float[] SCALE_HIDDEN = new float[]{0, 0, 0};
+
+    /**
+     * Half the side of a tile's face in the mesh.
+     */
+    private static final float MESH_TILE_HALF = 0.9f;
+
+    /**
+     * Depth of the tiles' faces in the mesh, i.e. the front of a tile's box.
+     */
+    private static final float MESH_TILE_Z = 0.1f;
+
+    /**
+     * HUD slot of the title.
+     */
+    private static final int HUD_TITLE = 0;
+
+    /**
+     * HUD slot of the primary subtitle.
+     */
+    private static final int HUD_SUBTITLE1 = 1;
+
+    /**
+     * HUD slot of the secondary subtitle.
+     */
+    private static final int HUD_SUBTITLE2 = 2;
+
+    /**
+     * HUD slot of the left button's label.
+     */
+    private static final int HUD_BUTTON1 = 3;
+
+    /**
+     * HUD slot of the solve button's label.
+     */
+    private static final int HUD_BUTTON3 = 4;
+
+    /**
+     * Interval between moves when playing a solution back, in seconds.
+     */
+    private static final double PLAYBACK_INTERVAL = 0.5;
+
+    /**
+     * Default duration of a tile's slide, in seconds.
+     */
+    private static final double SLIDE_DURATION = 0.15;
 
     /**
      * Available spawn methods.
@@ -92,6 +151,23 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
         RANDOM
     };
 
+    /**
+     * Available render methods.
+     */
+    public enum RenderMethod {
+
+        /**
+         * Render each tile as a separate button.
+         */
+        TILES,
+
+        /**
+         * Render all tiles as a single mesh, so that the number of nodes does
+         * not depend on the board's size.
+         */
+        MESH
+    };
+
     /**
      * A reference to the browser.
      */
@@ -148,15 +224,95 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
      */
     private SpawnMethod spawnLogic = SpawnMethod.ORIGIN;
 
+    /**
+     * Shuffle method.
+     */
+    private Game.ShuffleMethod shuffleLogic = Game.ShuffleMethod.WALK;
+
+    /**
+     * Optimal solution length of generated boards, 0 to shuffle according to
+     * the shuffle method instead. Boards too far from the goal to generate
+     * in time are shuffled instead.
+     */
+    private int difficulty = 0;
+
+    /**
+     * Number of moves by which the optimal solution length of generated
+     * boards may exceed the difficulty.
+     */
+    private int difficultyTolerance = 0;
+
+    /**
+     * Seed of the random source, 0 for a different one per instance.
+     */
+    private int seed = 0;
+
+    /**
+     * The source of randomness for respawning.
+     */
+    private RandomSource random = null;
+
+    /**
+     * Render method.
+     */
+    private RenderMethod renderLogic = RenderMethod.TILES;
+
+    /**
+     * Duration of a tile's slide, in seconds, 0 for tiles to move at once.
+     */
+    private double slideDuration = SLIDE_DURATION;
+
     /**
      * A map of named materials.
      */
     private Hashtable<String, X3DNode> materials = null;
 
     /**
-     * The flattened array of board data.
+     * Nodes shared by all buttons of all games in the execution context,
+     * null unless initialized.
+     */
+    private SharedNodes sharedNodes = null;
+
+    /**
+     * The execution context the shared nodes have been acquired for.
+     */
+    private X3DExecutionContext sharedContext = null;
+
+    /**
+     * Arena mode flag.
+     */
+    private boolean arenaMode = false;
+
+    /**
+     * The arena, null unless in arena mode.
+     */
+    private Arena arena = null;
+
+    /**
+     * The arena TimeSensor's elapsed time the game time counts from.
+     */
+    private double timerBase = 0;
+
+    /**
+     * The game time the timer counts from, non-zero for a restored game.
      */
-    private int[] board = null;
+    private double timerOffset = 0;
+
+    /**
+     * The game time as of the timer's last tick.
+     */
+    private double gameTime = 0;
+
+    /**
+     * The game logic.
+     */
+    private Game game = null;
+
+    /**
+     * The flattened array of board data, as last written to the board-state
+     * field.
+     */
+    private int[] boardData = null;
 
     /**
      * The model's root node, used to position the game in space.
@@ -168,6 +324,60 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
      */
     private X3DNode[] buttons = null;
 
+    /**
+     * The translation of a tile at each cell.
+     */
+    private float[][] cellTranslations = null;
+
+    /**
+     * The keyValue field of each tile's slide interpolator, null unless
+     * tiles slide.
+     */
+    private MFVec3f[] slideKeyValues = null;
+
+    /**
+     * The startTime field of each tile's slide TimeSensor, null unless tiles
+     * slide.
+     */
+    private SFTime[] slideStartTimes = null;
+
+    /**
+     * The routes driving the tiles' slides, null unless tiles slide.
+     */
+    private X3DRoute[] slideRoutes = null;
+
+    /**
+     * The key values of a slide, i.e. the translations of the cells a tile
+     * slides from and to.
+     */
+    private final float[] slideValue = new float[6];
+
+    /**
+     * The point field of the mesh's coordinates, null unless rendering a
+     * mesh.
+     */
+    private MFVec3f meshPoints = null;
+
+    /**
+     * The mesh's coordinates, four vertices per tile.
+     */
+    private float[] meshData = null;
+
+    /**
+     * The mesh's TouchSensor, null unless rendering a mesh.
+     */
+    private X3DNode meshSensor = null;
+
+    /**
+     * The touchTime field of the mesh's TouchSensor.
+     */
+    private SFTime meshTouchTime = null;
+
+    /**
+     * The point the mesh was last clicked at.
+     */
+    private final float[] hitPoint = new float[3];
+
     /**
      * Left button node.
      */
@@ -178,6 +388,21 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
      */
     private X3DNode button2 = null;
 
+    /**
+     * Solve button node.
+     */
+    private X3DNode button3 = null;
+
+    /**
+     * Undo button node.
+     */
+    private X3DNode button4 = null;
+
+    /**
+     * Redo button node.
+     */
+    private X3DNode button5 = null;
+
     /**
      * Title node.
      */
@@ -194,24 +419,39 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
     private X3DNode subtitle2 = null;
 
     /**
-     * Missing tile index.
+     * The texts of the titles and buttons.
      */
-    private int missingTileIndex = -1;
+    private Hud hud = null;
 
     /**
-     * The game's state.
+     * Gametime node.
      */
-    private int state = 0;
+    private X3DNode timeSensor = null;
 
     /**
-     * Step count.
+     * The TimeSensor scheduling the moves of a solution being played back.
      */
-    private int steps = 0;
+    private X3DNode playbackSensor = null;
 
     /**
-     * Gametime node.
+     * The solution being played back, null if none.
      */
-    private X3DNode timeSensor = null;
+    private int[] playback = null;
+
+    /**
+     * Index of the next move of the solution being played back.
+     */
+    private int playbackIndex = 0;
+
+    /**
+     * Whether a move of the solution being played back is being made.
+     */
+    private boolean playbackStepping = false;
+
+    /**
+     * Whether a solution to play back is being computed.
+     */
+    private boolean solving = false;
 
     /**
      * The readable board-state field.
@@ -223,6 +463,98 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
      */
     private boolean showBounds = false;
 
+    /**
+     * The field used to request a dump of the trace.
+     */
+    private SFBool dumpTrace = null;
+
+    /**
+     * The field used to request a hint.
+     */
+    private SFBool hint = null;
+
+    /**
+     * The field the hinted tile is written to.
+     */
+    private SFInt32 hintChanged = null;
+
+    /**
+     * The service computing hints off the event thread.
+     */
+    private final HintService hints = new HintService();
+
+    /**
+     * The event trace, disabled unless a size is specified via the
+     * "traceSize" field.
+     */
+    private Trace trace = new Trace(0);
+
+    /**
+     * Field writes pending until the end of the current event cascade.
+     */
+    private final UpdateQueue updates = new UpdateQueue();
+
+    /**
+     * Directory holding pattern databases for the solver, null if none.
+     */
+    private String patternDatabases = null;
+
+    /**
+     * The file games are saved to, null if none.
+     */
+    private String saveFile = null;
+
+    /**
+     * Number of slots of a newly created save file.
+     */
+    private int saveSlotCount = SaveSlots.DEFAULT_SLOT_COUNT;
+
+    /**
+     * The field used to save the game to a slot.
+     */
+    private SFInt32 saveGame = null;
+
+    /**
+     * The field used to load the game from a slot.
+     */
+    private SFInt32 loadGame = null;
+
+    /**
+     * The save file, null unless specified and successfully opened.
+     */
+    private SaveSlots saves = null;
+
+    /**
+     * Number of clicks queued per cascade, 0 to process clicks as they
+     * arrive.
+     */
+    private int inputQueueSize = InputQueue.DEFAULT_CAPACITY;
+
+    /**
+     * What becomes of clicks arriving while the queue is full.
+     */
+    private InputQueue.OverflowPolicy inputOverflow = InputQueue.OverflowPolicy.REJECT;
+
+    /**
+     * Clicks awaiting processing, null if processed as they arrive.
+     */
+    private InputQueue inputs = null;
+
+    /**
+     * The metrics of this instance, exposed through JMX once initialized.
+     */
+    private Metrics metrics = null;
+
+    /**
+     * The time the click being handled has been received at, 0 if none.
+     */
+    private long clickTime = 0;
+
+    /**
+     * The file game sessions are recorded to, null if none.
+     */
+    private String sessionLog = null;
+
     /*** Inherited methods ****************************************************/
 
     /**
@@ -276,6 +608,27 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
             if (n.equals("spawnLogic")) {
                 spawnLogic = SpawnMethod.valueOf(((SFString) v).getValue());
             }
+            if (n.equals("shuffleLogic")) {
+                shuffleLogic = Game.ShuffleMethod.valueOf(((SFString) v).getValue());
+            }
+            if (n.equals("difficulty")) {
+                difficulty = ((SFInt32) v).getValue();
+            }
+            if (n.equals("difficultyTolerance")) {
+                difficultyTolerance = ((SFInt32) v).getValue();
+            }
+            if (n.equals("seed")) {
+                seed = ((SFInt32) v).getValue();
+            }
+            if (n.equals("arena")) {
+                arenaMode = ((SFBool) v).getValue();
+            }
+            if (n.equals("renderLogic")) {
+                renderLogic = RenderMethod.valueOf(((SFString) v).getValue());
+            }
+            if (n.equals("slideDuration")) {
+                slideDuration = ((SFTime) v).getValue();
+            }
             if (n.equals("spawnLocations")) {
                 spawnLocations = new float[((MFFloat) v).getSize()];
                 ((MFFloat) v).getValue(spawnLocations);
@@ -302,6 +655,55 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
             if (n.equals("boardState")) {
                 boardState = (MFInt32) e.getValue();
             }
+            if (n.equals("traceSize")) {
+                trace = new Trace(((SFInt32) v).getValue());
+            }
+            if (n.equals("dumpTrace")) {
+                dumpTrace = (SFBool) v;
+                dumpTrace.addX3DEventListener(this);
+            }
+            if (n.equals("hint")) {
+                hint = (SFBool) v;
+                hint.addX3DEventListener(this);
+            }
+            if (n.equals("hint_changed")) {
+                hintChanged = (SFInt32) v;
+            }
+            if (n.equals("patternDatabases")) {
+                patternDatabases = ((SFString) v).getValue();
+                if (patternDatabases != null && patternDatabases.length() == 0) {
+                    patternDatabases = null;
+                }
+            }
+            if (n.equals("saveFile")) {
+                saveFile = ((SFString) v).getValue();
+                if (saveFile != null && saveFile.length() == 0) {
+                    saveFile = null;
+                }
+            }
+            if (n.equals("sessionLog")) {
+                sessionLog = ((SFString) v).getValue();
+                if (sessionLog != null && sessionLog.length() == 0) {
+                    sessionLog = null;
+                }
+            }
+            if (n.equals("saveSlots")) {
+                saveSlotCount = ((SFInt32) v).getValue();
+            }
+            if (n.equals("saveGame")) {
+                saveGame = (SFInt32) v;
+                saveGame.addX3DEventListener(this);
+            }
+            if (n.equals("loadGame")) {
+                loadGame = (SFInt32) v;
+                loadGame.addX3DEventListener(this);
+            }
+            if (n.equals("inputQueueSize")) {
+                inputQueueSize = ((SFInt32) v).getValue();
+            }
+            if (n.equals("inputOverflow")) {
+                inputOverflow = InputQueue.OverflowPolicy.valueOf(((SFString) v).getValue());
+            }
         }
 
         // check for required fields...
@@ -341,6 +743,27 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
                 }
                 break;
         }
+
+        // set up the game logic, giving the game a source of its own so that
+        // its shuffles do not depend on how often respawning occurs...
+
+        random = seed != 0 ? new RandomSource(seed) : new RandomSource();
+        game = new Game(width, height);
+        game.setRandom(random.split());
+        game.setShuffleLogic(shuffleLogic);
+        game.setDifficulty(difficulty, difficulty + difficultyTolerance);
+        game.setPatternDatabases(patternDatabases);
+        game.setTrace(trace);
+        // unless spawning at the origin, the game is unlikely to remain in
+        // front of the player once solved...
+        game.setRestartOffered(spawnLogic == SpawnMethod.ORIGIN);
+        game.setListener(this);
+
+        // queue clicks so that they are processed once per cascade, unless
+        // told otherwise...
+        if (inputQueueSize > 0) {
+            inputs = new InputQueue(game, inputQueueSize, inputOverflow);
+        }
     }
 
     /**
@@ -358,11 +781,57 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
 
         debugMessage(".initialize");
 
-        resetData(false);
+        metrics = Metrics.create();
+        game.setMetrics(metrics);
+        if (inputs != null) {
+            inputs.setMetrics(metrics);
+        }
+
+        game.resetData(false);
+
+        if (saveFile != null) {
+            try {
+                saves = SaveSlots.open(new File(saveFile), saveSlotCount, SaveSlots.DEFAULT_SLOT_SIZE);
+            }
+            catch (IOException e) {
+                debugMessage("Cannot open save file " + saveFile + ": " + e.getMessage());
+            }
+        }
+        if (patternDatabases != null && !new File(patternDatabases).isDirectory()) {
+            debugMessage("Pattern database directory " + patternDatabases + " not found, hints and solutions may not complete on large boards");
+        }
+        if (sessionLog != null) {
+            try {
+                game.setSessionLog(SessionLog.open(new File(sessionLog)));
+            }
+            catch (IOException e) {
+                debugMessage("Cannot open session log " + sessionLog + ": " + e.getMessage());
+            }
+        }
+
+        // in arena mode, share the timer and listener of all games in the
+        // scene...
+        X3DExecutionContext scene = browser.getExecutionContext();
+        if (arenaMode) {
+            arena = Arena.join(scene, this);
+            if (arena == null) {
+                debugMessage("Arena mode requires a scene, defaulting to a standalone game");
+            }
+        }
 
-        // initialize...
-        initializeMaterials(browser.getExecutionContext());
+        // initialize, creating materials unless another game in the
+        // execution context already has, or is doing so meanwhile...
+        sharedContext = scene;
+        sharedNodes = MaterialRegistry.acquire(scene);
+        materials = sharedNodes.getMaterials(scene, new SharedNodes.MaterialFactory() {
+
+            @Override public Hashtable<String, X3DNode> createMaterials(X3DExecutionContext scene) {
+                initializeMaterials(scene);
+                return materials;
+            }
+        });
         initModel();
+        commitUpdates();
     }
 
     /**
@@ -370,12 +839,38 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
      */
     @Override public void shutdown() {
         debugMessage(".shutdown");
+        hints.cancel();
+        if (arena != null) {
+            arena.leave(this);
+            arena = null;
+        }
+        if (sharedContext != null) {
+            MaterialRegistry.release(sharedContext);
+            sharedContext = null;
+            sharedNodes = null;
+        }
+        if (saves != null) {
+            saves.force();
+            saves = null;
+        }
+        // the log is shared, hence left open and written in the
+        // background...
+        game.setSessionLog(null);
+        if (metrics != null) {
+            metrics.unregister();
+        }
     }
 
     /**
      *
      */
     @Override public void eventsProcessed() {
+        // process the cascade's clicks, pick up a hint completed meanwhile,
+        // and commit all field writes queued while processing the cascade's
+        // events as a single update...
+        drainInputs();
+        applyHint();
+        commitUpdates();
     }
 
     /**
@@ -383,308 +878,263 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
      */
     @Override public void readableFieldChanged(X3DFieldEvent x3DFieldEvent) {
 
+        metrics.eventReceived();
+
         if (x3DFieldEvent.getSource() == click) {
+            // clicks are timed until their writes are committed, i.e. at the
+            // end of the cascade...
+            if (clickTime == 0) {
+                clickTime = System.nanoTime();
+            }
             int buttonId = click.getValue();
-            debugMessage("Received click event on button id " + buttonId + "...");
-            process(buttonId);
+            trace.record(Trace.EVENT, buttonId, 0);
+            if (debug) {
+                debugMessage("Received click event on button id " + buttonId + "...");
+            }
+            input(buttonId);
+        }
+        else if (x3DFieldEvent.getSource() == meshTouchTime) {
+            if (clickTime == 0) {
+                clickTime = System.nanoTime();
+            }
+            int buttonId = pickTile();
+            trace.record(Trace.EVENT, buttonId, 1);
+            if (debug) {
+                debugMessage("Received mesh TouchSensor event on button id " + buttonId + "...");
+            }
+            if (buttonId != -1) {
+                input(buttonId);
+            }
+            drainInputs();
+            commitUpdates();
+        }
+        else if (x3DFieldEvent.getSource() == dumpTrace) {
+            if (dumpTrace.getValue()) {
+                dumpTrace();
+            }
+        }
+        else if (x3DFieldEvent.getSource() == hint) {
+            // hints are only meaningful while playing, and are computed in
+            // the background so as not to hold up event delivery, for the
+            // board as left by the clicks preceding the request...
+            drainInputs();
+            if (hint.getValue() && game.getState() == Game.STATE_PLAYING && playback == null) {
+                trace.record(Trace.HINT, 0, 0);
+                solving = false;
+                hud.setText(HUD_BUTTON3, "Solve");
+                hints.request(game);
+            }
+        }
+        else if (x3DFieldEvent.getSource() == saveGame) {
+            // clicks preceding the save are part of the game saved...
+            drainInputs();
+            saveGame(saveGame.getValue());
+        }
+        else if (x3DFieldEvent.getSource() == loadGame) {
+            drainInputs();
+            loadGame(loadGame.getValue());
         }
         // if the event did not come for a known registered field, it is safe to
         // assume it has come from one of the dynamically-created
         // TouchSensors on the various buttons...
         else {
+            if (clickTime == 0) {
+                clickTime = System.nanoTime();
+            }
             int buttonId = ((Integer) ((X3DField) x3DFieldEvent.getSource()).getUserData()).intValue();
-            debugMessage("Received TouchSensor event on button id " + buttonId + "...");
-            process(buttonId);
+            trace.record(Trace.EVENT, buttonId, 1);
+            if (debug) {
+                debugMessage("Received TouchSensor event on button id " + buttonId + "...");
+            }
+            input(buttonId);
+            // TouchSensor events are not script events, hence are not
+            // followed by eventsProcessed(), so process and commit right
+            // away...
+            drainInputs();
+            commitUpdates();
         }
     }
 
-    /*** Game logic ***********************************************************/
-
     /**
-     * An initialization method that randomly arranges tiles and selects missing
-     * one. Does not guarantee solvability.
-     * @param isLastMissing true if the missing tile should always be the last
-     * one, false otherwise
+     * Queues the specified click for processing at the end of the cascade,
+     * or processes it right away if clicks are not queued.
+     *
+     * @param buttonId the index of the button or tile clicked
      */
-    protected void resetDataRandom(boolean isLastMissing) {
-        debugMessage(".resetDataRandom");
-        int size = width * height;
-        int maxIndex = size - 1;
-        missingTileIndex = isLastMissing ? maxIndex : (int) Math.round(Math.random() * maxIndex);
-        board = new int[size];
-        boolean[] indexUsed = new boolean[size];
-        for (int i = 0; i != size; i++) {
-            indexUsed[i] = false;
+    protected void input(int buttonId) {
+        if (inputs != null) {
+            inputs.offer(buttonId);
         }
-        int tileIndex = -1;
-        for (int i = 0; i != size; i++) {
-            do {
-                tileIndex = (int) Math.round(Math.random() * maxIndex);
-            }
-            while (indexUsed[tileIndex]);
-            indexUsed[tileIndex] = true;
-            if (tileIndex == missingTileIndex) {
-                tileIndex = -1;
-            }
-            board[i] = tileIndex;
+        else {
+            game.process(buttonId);
         }
     }
 
     /**
-     * An initialization method that arranges tiles by sequentially performing
-     * random moves and randomly selects a missing tile. Guarantees solvability.
-     * @param isLastMissing true if the missing tile should always be the last
-     * one, false otherwise
+     * Processes all queued clicks.
      */
-    protected void resetData(boolean isLastMissing) {
-        debugMessage(".resetData");
-        int size = width * height;
-        int maxIndex = size - 1;
-        missingTileIndex = isLastMissing ? maxIndex : (int) Math.round(Math.random() * maxIndex);
-        board = new int[size];
-        for (int i = 0; i != size; i++) {
-            if (i != missingTileIndex) {
-                board[i] = i;
-            }
-            else {
-                board[i] = -1;
-            }
-        }
-        debugMessage("Initial state: " + printArray(board, ",", true));
-
-        ArrayList<Integer> free = new ArrayList<Integer>(4);
-        int missingIndex = missingTileIndex;
-        int optionIndex;
-        for (int i = 0; i != DEFAULT_SHUFFLE_DEPTH; i++) {
-            free.clear();
-            for (int k = 0; k != size; k++) {
-                if (checkFree(k) != -1) {
-                    free.add(k);
-                }
-            }
-            optionIndex = free.get((int) Math.abs(Math.random() * free.size())).intValue();
-            debugMessage(
-                "[" + i + "] " +
-                "board: " + printArray(board, ",", true) + ", " +
-                "free: " + printArray(free, ",", true) + ", " +
-                "option: " + optionIndex);
-            board[missingIndex] = board[optionIndex];
-            board[optionIndex] = -1;
-            missingIndex = optionIndex;
+    protected void drainInputs() {
+        if (inputs != null) {
+            inputs.drain();
         }
     }
 
+    /*** Game presentation ****************************************************/
+
     /**
-     * Starts a new game. In particular, it initializes data, sets button labels
-     * and titles, starts the timer and arranges tiles.
+     *
      */
-    protected void startGame() {
-        debugMessage(".startGame");
-        setButtonText(button1, "Abort");
-        setTitleText(title, "Playing...");
-        setTitleText(subtitle2, "Steps: 0");
+    @Override public void gameStarted(Game game) {
+        debugMessage(".gameStarted");
+        hud.setText(HUD_BUTTON1, "Abort");
+        hud.setText(HUD_TITLE, "Playing...");
+        hud.setSteps(HUD_SUBTITLE2, 0);
+        timerOffset = 0;
+        gameTime = 0;
         setTimerEnabled(true);
-        resetData(false);
         dumpData();
         arrange();
-        steps = 0;
-        state = 1;
     }
 
     /**
-     * Ends the current game. In particular, it respawns according to the
-     * currently-selected respawn method, sets button labels and titles and
-     * stops the timer.
+     *
      */
-    protected void endGame() {
-        debugMessage(".endGame");
-        debugMessage("Game ended, checking spawn logic...");
+    @Override public void gameEnded(Game game) {
+        debugMessage(".gameEnded");
+        stopPlayback();
+        hints.cancel();
         // respawn...
         respawn();
-        // adjust GUI according to spawn logic...
-        switch (spawnLogic) {
-            case RANDOM:
-            case SEQUENTIAL:
-            case SHUFFLE:
-                // game is unlikely to remain in front of the player, hence
-                // there is no point in presenting post-game data...
-                setButtonText(button1, "Start");
-                setTitleText(title, "Welcome!");
-                setTitleText(subtitle1, "");
-                setTitleText(subtitle2, "");
-                state = 0;
-                break;
-            case ORIGIN:
-            default:
-                // game will present meaningful post-game data to the player who
-                // is still in front of it, and offer the option to restart...
-                setButtonText(button1, "Restart");
-                setTitleText(title, "Congratulations!");
-                state = 2;
-                break;
+        // adjust GUI according to spawn logic, which has determined whether
+        // the game offers a restart...
+        if (game.getState() == Game.STATE_WELCOME) {
+            // game is unlikely to remain in front of the player, hence
+            // there is no point in presenting post-game data...
+            hud.setText(HUD_BUTTON1, "Start");
+            hud.setText(HUD_TITLE, "Welcome!");
+            hud.setText(HUD_SUBTITLE1, "");
+            hud.setText(HUD_SUBTITLE2, "");
+        }
+        else {
+            // game will present meaningful post-game data to the player who
+            // is still in front of it, and offer the option to restart...
+            hud.setText(HUD_BUTTON1, "Restart");
+            hud.setText(HUD_TITLE, "Congratulations!");
         }
         // in all cases, stop timer...
         setTimerEnabled(false);
     }
 
     /**
-     * Abords the current game. In particular, it sets button labels and titles
-     * and stops the timer.
+     *
      */
-    protected void abortGame() {
-        debugMessage(".abortGame");
-        setButtonText(button1, "Reset");
-        setTitleText(title, "Game aborted!");
+    @Override public void gameAborted(Game game) {
+        debugMessage(".gameAborted");
+        stopPlayback();
+        hints.cancel();
+        hud.setText(HUD_BUTTON1, "Reset");
+        hud.setText(HUD_TITLE, "Game aborted!");
         setTimerEnabled(false);
-        state = 2;
     }
 
     /**
-     * Resets the game. In particular, it initializes data, sets button labels
-     * and titles, stops the timer and arranges tiles.
+     *
      */
-    protected void resetGame() {
-        debugMessage(".resetGame");
-        setButtonText(button1, "Start");
-        setTitleText(title, "Welcome!");
-        setTitleText(subtitle1, "");
-        setTitleText(subtitle2, "");
+    @Override public void gameReset(Game game) {
+        debugMessage(".gameReset");
+        stopPlayback();
+        hints.cancel();
+        hud.setText(HUD_BUTTON1, "Start");
+        hud.setText(HUD_TITLE, "Welcome!");
+        hud.setText(HUD_SUBTITLE1, "");
+        hud.setText(HUD_SUBTITLE2, "");
         setTimerEnabled(false);
-        for (int i = 0; i != width * height; i++) {
-            board[i] = i;
-        }
         arrange();
-        state = 0;
+        showMissingTile();
     }
 
     /**
-     * Handler for player actions (i.e., tile clicks). Applies game logic, sets
-     * titles and arranges tiles.
      *
-     * @param id id of the tile the player has clicked on
      */
-    protected void playerAction(int id) {
-        debugMessage(".playerAction");
-        int buttonIndex = -1;
-        for (int i = 0; i != board.length; i++) {
-            if (board[i] == id) {
-                buttonIndex = i;
-            }
-        }
-        int freeIndex = checkFree(buttonIndex);
-        if (freeIndex != -1) {
-            board[buttonIndex] = -1;
-            board[freeIndex] = id;
-            steps++;
-            debugMessage("Steps: " + steps);
-            setTitleText(subtitle2, "Steps: " + String.valueOf(steps));
-            arrange();
+    @Override public void tileMoved(Game game, int tileIndex, int from) {
+        if (debug) {
+            debugMessage("Steps: " + game.getSteps());
         }
-    }
-
-    /**
-     * Checks if the current data represent an ordered arrangement of tiles.
-     * 
-     * @return true if the current data represent an ordered arrangement of
-     * tiles (i.e., a solved game), false otherwise
-     */
-    protected boolean isSuccessful() {
-        debugMessage(".isSuccesful");
-        boolean result = true;
-        for (int i = 0; i != width * height; i++) {
-            if (board[i] != -1 && board[i] != i) {
-                result = false;
-            }
+        hud.setSteps(HUD_SUBTITLE2, game.getSteps());
+        arrange(tileIndex, from);
+        // any hint or solution is for the board before the move, unless the
+        // move is the solution's own...
+        if (!playbackStepping) {
+            stopPlayback();
+            hints.cancel();
         }
-        return result;
+        hud.setText(HUD_TITLE, playback != null ? "Solving..." : "Playing...");
     }
 
     /**
-     * Returns the index of the free tile if it is adjacent to the specified
-     * tile.
      *
-     * @param index the index of the tile to locate the free tile with respect
-     * to
-     *
-     * @return the index of the free tile if it is adjacent to the specified
-     * tile, -1 otherwise
      */
-    protected int checkFree(int index) {
-        debugMessage(".checkFree, index = " + index);
-        int above = index >= width ? index - width : -1;
-        int below = index < width * (height - 1) ? index + width : -1;
-        int left = (index % width != 0) ? index - 1 : -1;
-        int right = ((index + 1) % width) != 0 ? index + 1 : -1;
-        int result = -1;
-        if (above != -1 && board[above] == -1) {
-            result = above;
-        }
-        if (below != -1 && board[below] == -1) {
-            result = below;
-        }
-        if (left != -1 && board[left] == -1) {
-            result = left;
-        }
-        if (right != -1 && board[right] == -1) {
-            result = right;
+    @Override public void gameReplayed(Game game) {
+        debugMessage(".gameReplayed");
+        stopPlayback();
+        hints.cancel();
+        hud.setSteps(HUD_SUBTITLE2, game.getSteps());
+        if (game.getState() == Game.STATE_PLAYING) {
+            hud.setText(HUD_TITLE, "Playing...");
         }
-        return result;
+        arrange();
     }
 
     /**
-     * Handler for tile and button clicks. Manages the game according to current
-     * state and tile or button clicked.
      *
-     * @param index the index of the button or tile the user has clicked on
      */
-    protected void process(int index) {
-
-        debugMessage(".process, index = " + index);
-
-        switch (index) {
-
-            case -1:
-                switch (state) {
-                    case 0:
-                        // starting a new game...
-                        startGame();
-                        break;
-                    case 1:
-                        // aborting a game...
-                        // todo: ask player to abandon current game...
-                        abortGame();
-                        break;
-                    case 2:
-                        // resetting the game...
-                        resetGame();
-                        break;
-                }
+    @Override public void gameRestored(Game game) {
+        debugMessage(".gameRestored");
+        stopPlayback();
+        hints.cancel();
+        timerOffset = 0;
+        gameTime = 0;
+        hud.setText(HUD_SUBTITLE1, "");
+        hud.setSteps(HUD_SUBTITLE2, game.getSteps());
+        switch (game.getState()) {
+            case Game.STATE_PLAYING:
+                hud.setText(HUD_BUTTON1, "Abort");
+                hud.setText(HUD_TITLE, "Playing...");
                 break;
-
-            case -2:
-                // todo: open child browser window to help url...
+            case Game.STATE_OVER:
+                hud.setText(HUD_BUTTON1, game.isSuccessful() ? "Restart" : "Reset");
+                hud.setText(HUD_TITLE, game.isSuccessful() ? "Congratulations!" : "Game aborted!");
                 break;
-
             default:
-                if (index < width * height) {
-                    switch (state) {
-                        case 0:
-                        case 2:
-                            debugMessage("Buttons inactive!");
-                            break;
-                        case 1:
-                            playerAction(index);
-                            if (isSuccessful()) {
-                                endGame();
-                            }
-                            break;
-                    }
-                }
-                else {
-                    debugMessage("Invalid button id " + index + "!");
-                }
+                hud.setText(HUD_BUTTON1, "Start");
+                hud.setText(HUD_TITLE, "Welcome!");
+                hud.setText(HUD_SUBTITLE2, "");
                 break;
         }
+        setTimerEnabled(game.getState() == Game.STATE_PLAYING);
+        arrange();
+        if (game.getState() == Game.STATE_WELCOME) {
+            showMissingTile();
+        }
+    }
+
+    /**
+     *
+     */
+    @Override public void solveRequested(Game game) {
+        debugMessage(".solveRequested");
+        // the solve button toggles playback...
+        if (playback != null || solving) {
+            stopPlayback();
+            hints.cancel();
+            hud.setText(HUD_TITLE, "Playing...");
+        }
+        else {
+            solving = true;
+            hints.request(game);
+            hud.setText(HUD_TITLE, "Solving...");
+            hud.setText(HUD_BUTTON3, "Stop");
+        }
     }
 
     /*** model management *****************************************************/
@@ -783,7 +1233,7 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
         X3DNode button = createButton(scene, size, translation, xScale, label, index, materialBox, materialText, touchSensor);
 
         ((SFTime) touchSensor.getField("touchTime")).setUserData(new Integer(index));
-        touchSensor.getField("touchTime").addX3DEventListener(this);
+        listen(touchSensor.getField("touchTime"));
 
         return button;
     }
@@ -819,27 +1269,19 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
     {
         debugMessage(".createButton");
 
+        // the box, the appearances and the font style are the same for all
+        // buttons of the same size and materials, hence are shared (i.e., the
+        // SAI equivalent of DEF/USE), and only the nodes holding per-button
+        // state are created...
         X3DNode transform = scene.createNode("Transform");
-        X3DNode shapeBox = scene.createNode("Shape");
+        X3DNode shapeBox = getSharedBox(scene, size, materialBox);
         X3DNode shapeText = scene.createNode("Shape");
-        X3DNode appearanceBox = scene.createNode("Appearance");
-        X3DNode appearanceText = scene.createNode("Appearance");
-        X3DNode box = scene.createNode("Box");
         X3DNode transformText = scene.createNode("Transform");
         X3DNode text = scene.createNode("Text");
-        X3DNode fontStyle = scene.createNode("FontStyle");
-
-        ((SFVec3f) box.getField("size")).setValue(size);
-        ((SFNode) appearanceBox.getField("material")).setValue(materialBox);
-        ((SFNode) shapeBox.getField("appearance")).setValue(appearanceBox);
-        ((SFNode) shapeBox.getField("geometry")).setValue(box);
-
-        ((MFString) fontStyle.getField("justify")).setValue(1, new String[]{"MIDDLE"});
 
-        ((SFNode) text.getField("fontStyle")).setValue(fontStyle);
+        ((SFNode) text.getField("fontStyle")).setValue(getSharedFontStyle(scene));
         ((MFString) text.getField("string")).setValue(1, new String[]{label});
-        ((SFNode) appearanceText.getField("material")).setValue(materialText);
-        ((SFNode) shapeText.getField("appearance")).setValue(appearanceText);
+        ((SFNode) shapeText.getField("appearance")).setValue(getSharedAppearance(scene, materialText));
         ((SFNode) shapeText.getField("geometry")).setValue(text);
 
         ((SFVec3f) transformText.getField("translation")).setValue(new float[]{0.0f, 0.5f, 0.0f});
@@ -866,6 +1308,60 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
         return transform;
     }
 
+    /**
+     * Returns the appearance shared by all buttons with the specified
+     * material, creating it if needed.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     * @param material the material, as an X3DNode
+     *
+     * @return the appearance, as an X3DNode
+     */
+    protected X3DNode getSharedAppearance(X3DExecutionContext scene, X3DNode material) {
+        return sharedNodes.getAppearance(scene, material);
+    }
+
+    /**
+     * Returns the box shape shared by all buttons with the specified
+     * dimensions and material, creating it if needed.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     * @param size the box's dimensions, as an array of three floats
+     * corresponding to x, y and z components
+     * @param material the box's material, as an X3DNode
+     *
+     * @return the box shape, as an X3DNode
+     */
+    protected X3DNode getSharedBox(X3DExecutionContext scene, float[] size, X3DNode material) {
+        return sharedNodes.getBox(scene, size, material);
+    }
+
+    /**
+     * Returns the font style shared by all buttons, creating it if needed.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     *
+     * @return the font style, as an X3DNode
+     */
+    protected X3DNode getSharedFontStyle(X3DExecutionContext scene) {
+        return sharedNodes.getFontStyle(scene);
+    }
+
+    /**
+     * Dispatches the events of a TouchSensor field to this game, through the
+     * arena's listener in arena mode.
+     *
+     * @param field the field
+     */
+    protected void listen(X3DField field) {
+        if (arena != null) {
+            arena.listen(field, this);
+        }
+        else {
+            field.addX3DEventListener(this);
+        }
+    }
+
     /**
      * Creates a title with the specified parameters.
      *
@@ -927,6 +1423,51 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
         return transform;
     }
 
+    /**
+     * Creates the game's own TimeSensor, ticking once per second while the
+     * game timer is enabled.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     *
+     * @return the TimeSensor, as an X3DNode
+     */
+    protected X3DNode createTimeSensor(X3DExecutionContext scene) {
+        X3DNode timeSensor = scene.createNode("TimeSensor");
+        ((SFBool) timeSensor.getField("loop")).setValue(true);
+        ((SFBool) timeSensor.getField("enabled")).setValue(false);
+        ((SFTime) timeSensor.getField("cycleInterval")).setValue(1.0f);
+        final SFTime elapsedTimeField = (SFTime) timeSensor.getField("elapsedTime");
+        ((SFTime) timeSensor.getField("cycleTime")).addX3DEventListener(new X3DFieldEventListener() {
+
+            @Override public void readableFieldChanged(X3DFieldEvent x3DFieldEvent) {
+                timerTicked(elapsedTimeField.getValue());
+            }
+        });
+        return timeSensor;
+    }
+
+    /**
+     * Creates the TimeSensor scheduling the moves of a solution being played
+     * back, one move per cycle.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     *
+     * @return the TimeSensor, as an X3DNode
+     */
+    protected X3DNode createPlaybackSensor(X3DExecutionContext scene) {
+        X3DNode playbackSensor = scene.createNode("TimeSensor");
+        ((SFBool) playbackSensor.getField("loop")).setValue(true);
+        ((SFBool) playbackSensor.getField("enabled")).setValue(false);
+        ((SFTime) playbackSensor.getField("cycleInterval")).setValue(PLAYBACK_INTERVAL);
+        ((SFTime) playbackSensor.getField("cycleTime")).addX3DEventListener(new X3DFieldEventListener() {
+
+            @Override public void readableFieldChanged(X3DFieldEvent x3DFieldEvent) {
+                playbackStep();
+            }
+        });
+        return playbackSensor;
+    }
+
     /**
      * Initializes the game's X3D model.
      */
@@ -934,34 +1475,47 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
 
         debugMessage(".initModel");
 
+        long begin = System.nanoTime();
+
         X3DExecutionContext scene = browser.getExecutionContext();
 
+        // stop dispatching the arena's events to the sensors of a previous
+        // model, and driving its tiles...
+        if (arena != null) {
+            arena.forget(this);
+        }
+        removeSlides(scene);
+        // ...and drop the queued-write entries of its fields...
+        updates.prune();
+
         int tileCount = width * height;
 
-        X3DNode[] newChildren = new X3DNode[tileCount + (showBounds ? 7 : 6)];
+        int tileNodes = renderLogic == RenderMethod.MESH ? 1 : tileCount;
 
-        timeSensor = scene.createNode("TimeSensor");
-        ((SFBool) timeSensor.getField("loop")).setValue(true);
-        ((SFBool) timeSensor.getField("enabled")).setValue(false);
-        ((SFTime) timeSensor.getField("cycleInterval")).setValue(1.0f);
-        ((SFTime) timeSensor.getField("cycleTime")).addX3DEventListener(new X3DFieldEventListener() {
+        // tiles of the mesh cannot slide individually...
+        boolean sliding = renderLogic == RenderMethod.TILES && slideDuration > 0 && tileCount != 0;
 
-            @Override public void readableFieldChanged(X3DFieldEvent x3DFieldEvent) {
-                double elapsedTime = ((SFTime) timeSensor.getField("elapsedTime")).getValue();
-                setTitleText(subtitle1, "Game time: " + String.valueOf((int) elapsedTime / 1000) + " secs");
-                // also set the steps counter, as a safeguard to ensure that it
-                // will always display the correct count regardless of update
-                // delays; this should not be here on a release version, look
-                // into it further with latest versions of Xj3D and other APIs...
-                setTitleText(subtitle2, "Steps: " + String.valueOf(steps));
-            }
-        });
+        X3DNode[] newChildren = new X3DNode[tileNodes + (showBounds ? 10 : 9) + (arena == null ? 1 : 0) + (sliding ? 1 : 0)];
+
+        timeSensor = arena == null ? createTimeSensor(scene) : null;
+        playbackSensor = createPlaybackSensor(scene);
 
         title = createTitle(scene, new float[]{0, height * 2 + 1, 0}, 1.0f, "MAIN", new String[]{"Welcome!"}, 1.0f, materials.get("titleText"));
         subtitle1 = createTitle(scene, new float[]{0, height * 2, 0}, 1.0f, "SUB1", new String[]{}, 0.5f, materials.get("titleText"));
         subtitle2 = createTitle(scene, new float[]{0, height * 2 - 0.5f, 0}, 1.0f, "SUB2", new String[]{}, 0.5f, materials.get("titleText"));
         button1 = createButton(scene, new float[]{3.5f, 1.5f, 0.2f}, new float[]{-1.85f, -2, 0}, 1.0f, "Start", -1, materials.get("buttonGUI"), materials.get("buttonText"));
         button2 = createButton(scene, new float[]{3.5f, 1.5f, 0.2f}, new float[]{1.85f, -2, 0}, 1.0f, "Help", -2, materials.get("buttonGUI"), materials.get("buttonText"), null);
+        button3 = createButton(scene, new float[]{3.5f, 1.5f, 0.2f}, new float[]{0, -3.7f, 0}, 1.0f, "Solve", Game.BUTTON_SOLVE, materials.get("buttonGUI"), materials.get("buttonText"));
+        button4 = createButton(scene, new float[]{3.5f, 1.5f, 0.2f}, new float[]{-1.85f, -5.4f, 0}, 1.0f, "Undo", Game.BUTTON_UNDO, materials.get("buttonGUI"), materials.get("buttonText"));
+        button5 = createButton(scene, new float[]{3.5f, 1.5f, 0.2f}, new float[]{1.85f, -5.4f, 0}, 1.0f, "Redo", Game.BUTTON_REDO, materials.get("buttonGUI"), materials.get("buttonText"));
+
+        // resolve the texts once, in the order of the HUD slots...
+        hud = new Hud(updates);
+        hud.attach(getTitleString(title), "Welcome!");
+        hud.attach(getTitleString(subtitle1), "");
+        hud.attach(getTitleString(subtitle2), "");
+        hud.attach(getButtonString(button1), "Start");
+        hud.attach(getButtonString(button3), "Solve");
 
         X3DNode helpAnchor = scene.createNode("Anchor");
         ((SFString) helpAnchor.getField("description")).setValue("Click to open XNumbers2 help in a new browser window");
@@ -979,7 +1533,7 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
         X3DNode boundsCoordinate = scene.createNode("Coordinate");
 
         float xmin = Math.min(-0.9f - (2.0f * width / 2), -3.6f);
-        float ymin = -2 - (1.5f / 2);
+        float ymin = -5.4f - (1.5f / 2);
         float zmin = 0.2f / 2;
         float xmax = Math.max(0.9f + (2.0f * width / 2), 3.6f);
         float ymax = height * 2 + 1;
@@ -1002,38 +1556,55 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
         ((SFNode) bounds.getField("appearance")).setValue(boundsAppearance);
         ((SFNode) bounds.getField("geometry")).setValue(boundsILS);
 
+        int k = tileNodes;
         if (showBounds) {
-            newChildren[newChildren.length - 7] = bounds;
+            newChildren[k++] = bounds;
+        }
+        if (timeSensor != null) {
+            newChildren[k++] = timeSensor;
         }
-        newChildren[newChildren.length - 6] = timeSensor;
-        newChildren[newChildren.length - 5] = subtitle2;
-        newChildren[newChildren.length - 4] = subtitle1;
-        newChildren[newChildren.length - 3] = title;
-        newChildren[newChildren.length - 2] = button1;
-        newChildren[newChildren.length - 1] = helpAnchor;
+        newChildren[k++] = subtitle2;
+        newChildren[k++] = subtitle1;
+        newChildren[k++] = title;
+        newChildren[k++] = playbackSensor;
+        newChildren[k++] = button1;
+        newChildren[k++] = button3;
+        newChildren[k++] = button4;
+        newChildren[k++] = button5;
+        newChildren[k++] = helpAnchor;
 
         if (tileCount != 0) {
             int[] tmpBoardState = new int[tileCount];
-            buttons = new X3DNode[tileCount];
+            buttons = renderLogic == RenderMethod.TILES ? new X3DNode[tileCount] : null;
+            cellTranslations = new float[tileCount][];
             for (int i = 0; i != height; i++) {
                 for (int j = 0; j != width; j++) {
                     float x = j * 2 - width + 1;
                     int index = i * width + j;
-                    X3DNode button = createButton(
-                        browser.getExecutionContext(),
-                        new float[]{1.8f, 1.8f, 0.2f},
-                        new float[]{x, (height - 1 - i) * 2, 0},
-                        1.0f,
-                        String.valueOf(index + 1),
-                        index,
-                        materials.get("buttonTile"),
-                        materials.get("buttonText"));
-                    buttons[index] = button;
-                    newChildren[index] = button;
-                    scene.updateNamedNode(String.valueOf(index + 1), button);
+                    cellTranslations[index] = new float[]{x, (height - 1 - i) * 2, 0};
+                    if (renderLogic == RenderMethod.TILES) {
+                        X3DNode button = createButton(
+                            browser.getExecutionContext(),
+                            new float[]{1.8f, 1.8f, 0.2f},
+                            cellTranslations[index],
+                            1.0f,
+                            String.valueOf(index + 1),
+                            index,
+                            materials.get("buttonTile"),
+                            materials.get("buttonText"));
+                        buttons[index] = button;
+                        newChildren[index] = button;
+                        scene.updateNamedNode(String.valueOf(index + 1), button);
+                    }
                     tmpBoardState[index] = index;
                 }
             }
+            if (renderLogic == RenderMethod.MESH) {
+                newChildren[0] = createMesh(scene);
+            }
+            if (sliding) {
+                newChildren[k++] = createSlides(scene);
+            }
             boardState.setValue(tmpBoardState.length, tmpBoardState);
         }
 
@@ -1042,9 +1613,176 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
         respawn();
         children.setValue(1, new X3DNode[]{root});
 
+        metrics.modelInitialized(System.nanoTime() - begin);
         debugMessage("New children: " + newChildren.length);
     }
 
+    /**
+     * Creates the nodes sliding the tiles, i.e. a TimeSensor and a
+     * PositionInterpolator per tile, routed to the tile's translation, so
+     * that the browser animates a move once given the cells involved and the
+     * time to start at.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     *
+     * @return a group of the nodes, as an X3DNode
+     */
+    protected X3DNode createSlides(X3DExecutionContext scene) {
+
+        debugMessage(".createSlides");
+
+        int tileCount = width * height;
+        slideKeyValues = new MFVec3f[tileCount];
+        slideStartTimes = new SFTime[tileCount];
+        slideRoutes = new X3DRoute[tileCount * 2];
+        X3DNode[] nodes = new X3DNode[tileCount * 2];
+        float[] key = new float[]{0, 1};
+        for (int i = 0; i != tileCount; i++) {
+            X3DNode sensor = scene.createNode("TimeSensor");
+            ((SFTime) sensor.getField("cycleInterval")).setValue(slideDuration);
+            X3DNode interpolator = scene.createNode("PositionInterpolator");
+            ((MFFloat) interpolator.getField("key")).setValue(key.length, key);
+            slideKeyValues[i] = (MFVec3f) interpolator.getField("keyValue");
+            slideStartTimes[i] = (SFTime) sensor.getField("startTime");
+            slideRoutes[i * 2] = scene.addRoute(sensor, "fraction_changed", interpolator, "set_fraction");
+            slideRoutes[i * 2 + 1] = scene.addRoute(interpolator, "value_changed", buttons[i], "set_translation");
+            nodes[i * 2] = sensor;
+            nodes[i * 2 + 1] = interpolator;
+        }
+        X3DNode group = scene.createNode("Group");
+        ((MFNode) group.getField("children")).setValue(nodes.length, nodes);
+        return group;
+    }
+
+    /**
+     * Removes the routes driving the tiles' slides, if any.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     */
+    protected void removeSlides(X3DExecutionContext scene) {
+        if (slideRoutes != null) {
+            for (int i = 0; i != slideRoutes.length; i++) {
+                if (slideRoutes[i] != null) {
+                    scene.removeRoute(slideRoutes[i]);
+                }
+            }
+        }
+        slideKeyValues = null;
+        slideStartTimes = null;
+        slideRoutes = null;
+    }
+
+    /**
+     * Creates the mesh rendering all tiles, i.e. a single IndexedFaceSet with
+     * a face per tile, textured by an atlas of all labels, and a single
+     * TouchSensor for all tiles. Tiles are placed at their own cells.
+     *
+     * @param scene the current X3D execution context (i.e., scene)
+     *
+     * @return the mesh, as an X3DNode
+     */
+    protected X3DNode createMesh(X3DExecutionContext scene) {
+
+        debugMessage(".createMesh");
+
+        int tileCount = width * height;
+
+        // labels in the colors of the tiles' boxes and text, the same for
+        // all meshes of as many tiles...
+        LabelAtlas atlas = new LabelAtlas(tileCount, 0x00FF00, 0xFF0000);
+        X3DNode appearance = sharedNodes.getMeshAppearance(scene, atlas, materials.get("buttonTile"));
+
+        X3DNode texCoord = scene.createNode("TextureCoordinate");
+        ((MFVec2f) texCoord.getField("point")).setValue(tileCount * 4, atlas.getTexCoords());
+
+        X3DNode coord = scene.createNode("Coordinate");
+        meshPoints = (MFVec3f) coord.getField("point");
+        meshData = new float[tileCount * 12];
+        for (int i = 0; i != tileCount; i++) {
+            setQuad(i, i, MESH_TILE_HALF);
+        }
+        updates.setValue(meshPoints, meshData);
+
+        // texture coordinates are indexed like coordinates...
+        int[] coordIndex = new int[tileCount * 5];
+        for (int i = 0; i != tileCount; i++) {
+            coordIndex[i * 5] = i * 4;
+            coordIndex[i * 5 + 1] = i * 4 + 1;
+            coordIndex[i * 5 + 2] = i * 4 + 2;
+            coordIndex[i * 5 + 3] = i * 4 + 3;
+            coordIndex[i * 5 + 4] = -1;
+        }
+        X3DNode faces = scene.createNode("IndexedFaceSet");
+        ((SFNode) faces.getField("coord")).setValue(coord);
+        ((SFNode) faces.getField("texCoord")).setValue(texCoord);
+        ((MFInt32) faces.getField("coordIndex")).setValue(coordIndex.length, coordIndex);
+
+        X3DNode shape = scene.createNode("Shape");
+        ((SFNode) shape.getField("appearance")).setValue(appearance);
+        ((SFNode) shape.getField("geometry")).setValue(faces);
+
+        meshSensor = scene.createNode("TouchSensor");
+        meshTouchTime = (SFTime) meshSensor.getField("touchTime");
+        listen(meshTouchTime);
+
+        X3DNode transform = scene.createNode("Transform");
+        ((MFNode) transform.getField("children")).setValue(2, new X3DNode[]{shape, meshSensor});
+        return transform;
+    }
+
+    /**
+     * Sets the coordinates of a tile's face in the mesh, without queuing
+     * them.
+     *
+     * @param tileIndex the index of the tile
+     * @param cell the cell to place the tile at
+     * @param half half the side of the face, 0 to hide the tile
+     */
+    protected void setQuad(int tileIndex, int cell, float half) {
+        float x = cellTranslations[cell][0];
+        float y = cellTranslations[cell][1];
+        int k = tileIndex * 12;
+        meshData[k] = x - half;
+        meshData[k + 1] = y - half;
+        meshData[k + 2] = MESH_TILE_Z;
+        meshData[k + 3] = x + half;
+        meshData[k + 4] = y - half;
+        meshData[k + 5] = MESH_TILE_Z;
+        meshData[k + 6] = x + half;
+        meshData[k + 7] = y + half;
+        meshData[k + 8] = MESH_TILE_Z;
+        meshData[k + 9] = x - half;
+        meshData[k + 10] = y + half;
+        meshData[k + 11] = MESH_TILE_Z;
+    }
+
+    /**
+     * Queues the coordinates of a tile's face in the mesh.
+     *
+     * @param tileIndex the index of the tile
+     */
+    protected void queueQuad(int tileIndex) {
+        for (int v = tileIndex * 4; v != tileIndex * 4 + 4; v++) {
+            updates.set1Value(meshPoints, v, meshData[v * 3], meshData[v * 3 + 1], meshData[v * 3 + 2]);
+        }
+    }
+
+    /**
+     * Returns the tile at the point the mesh was last clicked at.
+     *
+     * @return the index of the tile, -1 if none
+     */
+    protected int pickTile() {
+        ((SFVec3f) meshSensor.getField("hitPoint_changed")).getValue(hitPoint);
+        // tiles are 2 units apart, centered as per initModel()...
+        int column = Math.round((hitPoint[0] + width - 1) / 2);
+        int row = height - 1 - Math.round(hitPoint[1] / 2);
+        if (column < 0 || column >= width || row < 0 || row >= height) {
+            return -1;
+        }
+        return game.getBoard().get(row * width + column);
+    }
+
     /**
      * Respawns according to the currently-selected respawn method.
      */
@@ -1054,12 +1792,12 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
         float y;
         switch (spawnLogic) {
             case RANDOM:
-                x = spawnLocations[0] + (float) Math.random() * (spawnLocations[2] - spawnLocations[0]);
-                y = spawnLocations[1] + (float) Math.random() * (spawnLocations[3] - spawnLocations[1]);
+                x = spawnLocations[0] + random.nextFloat() * (spawnLocations[2] - spawnLocations[0]);
+                y = spawnLocations[1] + random.nextFloat() * (spawnLocations[3] - spawnLocations[1]);
                 debugMessage("Selected random location (" + x + ", " + y + ")...");
                 break;
             case SHUFFLE:
-                int i = (int) (Math.random() * (spawnLocations.length / 2));
+                int i = random.nextInt(spawnLocations.length / 2);
                 debugMessage("Selected location index " + i + " after shuffle...");
                 x = spawnLocations[i * 2 + 0];
                 y = spawnLocations[i * 2 + 1];
@@ -1081,28 +1819,92 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
                 y = 0;
                 break;
         }
-        ((SFVec3f) root.getField("translation")).setValue(new float[]{x, 0, y});
+        updates.setValue((SFVec3f) root.getField("translation"), new float[]{x, 0, y});
     }
 
     /**
-     * Arranges tiles according to current data.
+     * Arranges tiles according to current data. This updates every tile and
+     * the whole board-state field, and is meant for when the entire board
+     * changes (i.e., on game start and reset); single moves are reflected by
+     * {@link #arrange(int, int)}.
      */
     public void arrange() {
         debugMessage(".arrangeButtons");
-        for (int i = 0; i != height; i++) {
-            for (int j = 0; j != width; j++) {
-                float x = j * 2 - width + 1;
-                int tileIndex = board[i * width + j];
-                if (tileIndex == -1) {
-                    ((SFVec3f) buttons[missingTileIndex].getField("scale")).setValue(new float[]{0, 0, 0});
-                }
-                else {
-                    ((SFVec3f) buttons[tileIndex].getField("scale")).setValue(new float[]{1.0f, 1.0f, 1.0f});
-                    ((SFVec3f) buttons[tileIndex].getField("translation")).setValue(new float[]{x, (height - 1 - i) * 2, 0});
+        Board board = game.getBoard();
+        for (int i = 0; i != width * height; i++) {
+            int tileIndex = board.get(i);
+            if (renderLogic == RenderMethod.MESH) {
+                // the missing tile's face is collapsed onto the free cell...
+                setQuad(tileIndex == -1 ? game.getMissingTileIndex() : tileIndex, i, tileIndex == -1 ? 0 : MESH_TILE_HALF);
+            }
+            else if (tileIndex == -1) {
+                updates.setValue((SFVec3f) buttons[game.getMissingTileIndex()].getField("scale"), SCALE_HIDDEN);
+            }
+            else {
+                updates.setValue((SFVec3f) buttons[tileIndex].getField("scale"), SCALE_SHOWN);
+                updates.setValue((SFVec3f) buttons[tileIndex].getField("translation"), cellTranslations[i]);
+                if (slideKeyValues != null) {
+                    // a slide still in progress must end where the tile is
+                    // now placed...
+                    System.arraycopy(cellTranslations[i], 0, slideValue, 0, 3);
+                    System.arraycopy(cellTranslations[i], 0, slideValue, 3, 3);
+                    updates.setValue(slideKeyValues[tileIndex], slideValue);
                 }
             }
         }
-        boardState.setValue(board.length, board);
+        if (renderLogic == RenderMethod.MESH) {
+            updates.setValue(meshPoints, meshData);
+        }
+        boardData = board.toArray(boardData);
+        updates.setValue(boardState, boardData);
+    }
+
+    /**
+     * Arranges tiles after a single move. Only the moved tile and the two
+     * board-state entries involved are updated, so that the cost of a move
+     * does not depend on the board's size. The missing tile remains hidden
+     * throughout, hence needs no update. Sliding tiles are animated by the
+     * browser, hence a move takes the same number of writes either way.
+     *
+     * @param tileIndex the index of the tile that has been moved
+     * @param from the cell the tile has been moved from, which is now free
+     */
+    public void arrange(int tileIndex, int from) {
+        debugMessage(".arrangeButton");
+        int to = game.getBoard().positionOf(tileIndex);
+        if (renderLogic == RenderMethod.MESH) {
+            setQuad(tileIndex, to, MESH_TILE_HALF);
+            queueQuad(tileIndex);
+        }
+        else if (slideKeyValues != null) {
+            // the browser slides the tile from its cell to the free one...
+            System.arraycopy(cellTranslations[from], 0, slideValue, 0, 3);
+            System.arraycopy(cellTranslations[to], 0, slideValue, 3, 3);
+            updates.setValue(slideKeyValues[tileIndex], slideValue);
+            updates.setValue(slideStartTimes[tileIndex], browser.getCurrentTime());
+        }
+        else {
+            updates.setValue((SFVec3f) buttons[tileIndex].getField("translation"), cellTranslations[to]);
+        }
+        boardData[from] = -1;
+        boardData[to] = tileIndex;
+        updates.set1Value(boardState, from, -1);
+        updates.set1Value(boardState, to, tileIndex);
+    }
+
+    /**
+     * Shows the missing tile at its place, as on start-up, when the ordered
+     * arrangement is displayed.
+     */
+    protected void showMissingTile() {
+        int missingTileIndex = game.getMissingTileIndex();
+        if (renderLogic == RenderMethod.MESH) {
+            setQuad(missingTileIndex, missingTileIndex, MESH_TILE_HALF);
+            queueQuad(missingTileIndex);
+        }
+        else {
+            updates.setValue((SFVec3f) buttons[missingTileIndex].getField("scale"), SCALE_SHOWN);
+        }
     }
 
     /**
@@ -1111,35 +1913,208 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
      * @param isEnabled the game timer is enabled if true, disabled otherwise
      */
     protected void setTimerEnabled(boolean isEnabled) {
-        debugMessage(".setTimerEnabled, isEnabled = " + isEnabled);
-        ((SFBool) timeSensor.getField("enabled")).setValue(isEnabled);
+        if (debug) {
+            debugMessage(".setTimerEnabled, isEnabled = " + isEnabled);
+        }
+        if (arena != null) {
+            if (isEnabled) {
+                timerBase = arena.startTimer(this, updates);
+            }
+            else {
+                arena.stopTimer(this, updates);
+            }
+        }
+        else {
+            timerBase = 0;
+            updates.setValue((SFBool) timeSensor.getField("enabled"), isEnabled);
+        }
+    }
+
+    /**
+     * Updates the game time, called once per second while the game timer is
+     * enabled.
+     *
+     * @param elapsedTime the elapsed time of the TimeSensor timing the game
+     */
+    protected void timerTicked(double elapsedTime) {
+        // the HUD only writes texts that have changed, hence an idle
+        // game generates no scene events...
+        gameTime = elapsedTime - timerBase + timerOffset;
+        hud.setGameTime(HUD_SUBTITLE1, (int) gameTime / 1000);
+        // also set the steps counter, as a safeguard to ensure that it
+        // will always display the correct count regardless of update
+        // delays; this should not be here on a release version, look
+        // into it further with latest versions of Xj3D and other APIs...
+        hud.setSteps(HUD_SUBTITLE2, game.getSteps());
+        applyHint();
+        commitUpdates();
     }
 
     /**
-     * Sets the text of a title node.
+     * Saves the game, its move history and the game time to the specified
+     * slot of the save file, if any.
+     *
+     * @param slot the slot
+     */
+    protected void saveGame(int slot) {
+        if (saves == null || slot < 0 || slot >= saves.getSlotCount()) {
+            debugMessage("Cannot save to slot " + slot);
+            return;
+        }
+        if (!saves.save(slot, game, gameTime)) {
+            debugMessage("Move history does not fit in slot " + slot + ", saved current arrangement only");
+        }
+        hud.setText(HUD_TITLE, "Game saved");
+    }
+
+    /**
+     * Loads the game saved in the specified slot of the save file, if any,
+     * resuming the game time where it was saved.
+     *
+     * @param slot the slot
+     */
+    protected void loadGame(int slot) {
+        if (saves == null || slot < 0 || slot >= saves.getSlotCount()) {
+            debugMessage("Cannot load from slot " + slot);
+            return;
+        }
+        double time;
+        try {
+            time = saves.load(slot, game);
+        }
+        catch (IOException e) {
+            debugMessage(e.getMessage());
+            time = -1;
+        }
+        if (time < 0) {
+            hud.setText(HUD_TITLE, "No saved game!");
+            return;
+        }
+        // the game has been presented as restored, with the timer counting
+        // from zero...
+        timerOffset = time;
+        gameTime = time;
+        if (game.getState() != Game.STATE_WELCOME) {
+            hud.setGameTime(HUD_SUBTITLE1, (int) time / 1000);
+        }
+    }
+
+    /**
+     * Presents the pending hint, if completed: writes the hinted tile to the
+     * "hint_changed" field and displays it on the title.
+     */
+    protected void applyHint() {
+        if (!hints.isPending()) {
+            return;
+        }
+        int tileIndex = hints.poll();
+        if (tileIndex == HintService.NONE || game.getState() != Game.STATE_PLAYING) {
+            return;
+        }
+        if (solving) {
+            // the whole solution has been computed rather than a hint...
+            solving = false;
+            int[] solution = hints.getSolution();
+            if (solution != null) {
+                startPlayback(solution);
+            }
+            else {
+                hud.setText(HUD_TITLE, "No solution!");
+                hud.setText(HUD_BUTTON3, "Solve");
+            }
+            return;
+        }
+        trace.record(Trace.HINT, tileIndex, 1);
+        if (debug) {
+            debugMessage("Hint: " + tileIndex);
+        }
+        if (hintChanged != null) {
+            updates.setValue(hintChanged, tileIndex);
+        }
+        hud.setText(HUD_TITLE, tileIndex != -1 ? "Hint: move " + (tileIndex + 1) : "No hint!");
+    }
+
+    /**
+     * Starts playing back a solution, one move per cycle of the playback
+     * TimeSensor.
+     *
+     * @param solution the indices of the tiles to move in order
+     */
+    protected void startPlayback(int[] solution) {
+        if (debug) {
+            debugMessage(".startPlayback, moves = " + solution.length);
+        }
+        playback = solution;
+        playbackIndex = 0;
+        hud.setText(HUD_BUTTON3, "Stop");
+        updates.setValue((SFBool) playbackSensor.getField("enabled"), true);
+    }
+
+    /**
+     * Makes the next move of the solution being played back, if any.
+     */
+    protected void playbackStep() {
+        if (playback == null) {
+            return;
+        }
+        int tileIndex = playback[playbackIndex++];
+        boolean last = playbackIndex == playback.length;
+        playbackStepping = true;
+        try {
+            game.process(tileIndex);
+        }
+        finally {
+            playbackStepping = false;
+        }
+        // the last move normally ends the game, which stops playback...
+        if (last) {
+            stopPlayback();
+        }
+        // TimeSensor events are not script events, hence are not followed
+        // by eventsProcessed(), so commit right away...
+        commitUpdates();
+    }
+
+    /**
+     * Stops playing back or computing a solution, if doing so.
+     */
+    protected void stopPlayback() {
+        if (playback == null && !solving) {
+            return;
+        }
+        if (playback != null) {
+            updates.setValue((SFBool) playbackSensor.getField("enabled"), false);
+        }
+        playback = null;
+        solving = false;
+        hud.setText(HUD_BUTTON3, "Solve");
+    }
+
+    /**
+     * Returns the string field of a title node's text.
      *
      * @param title the title node, as an X3DNode
-     * @param text the text to set, as a String
+     *
+     * @return the string field, as an MFString
      */
-    protected void setTitleText(X3DNode title, String text) {
-        // debugMessage(".setTitleText");
+    protected MFString getTitleString(X3DNode title) {
         X3DNode s = ((MFNode) title.getField("children")).get1Value(0);
         X3DNode t = ((SFNode) s.getField("geometry")).getValue();
-        ((MFString) t.getField("string")).setValue(1, new String[]{text});
+        return (MFString) t.getField("string");
     }
 
     /**
-     * Sets the text of a button or tile node.
+     * Returns the string field of a button or tile node's label.
      *
      * @param button the button or tile node, as an X3DNode
-     * @param text the text to set, as a String
+     *
+     * @return the string field, as an MFString
      */
-    protected void setButtonText(X3DNode button, String text) {
-        // debugMessage(".setButtonText");
+    protected MFString getButtonString(X3DNode button) {
         X3DNode tr = ((MFNode) button.getField("children")).get1Value(1);
         X3DNode s = ((MFNode) tr.getField("children")).get1Value(0);
         X3DNode t = ((SFNode) s.getField("geometry")).getValue();
-        ((MFString) t.getField("string")).setValue(1, new String[]{text});
+        return (MFString) t.getField("string");
     }
 
     /*** XNumbers-specific helpers ********************************************/
@@ -1164,10 +2139,11 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
     protected void dumpData() {
         debugMessage(".dumpData");
         if (debug) {
+            Board board = game.getBoard();
             int i = 0;
             int j = 0;
             while (i * width + j != width * height) {
-                browser.print(board[i * width + j]);
+                browser.print(board.get(i * width + j));
                 j++;
                 if (j == width) {
                     browser.println("");
@@ -1181,11 +2157,38 @@ public class XNumbers implements X3DScriptImplementation, X3DFieldEventListener
         }
     }
 
+    /**
+     * Dumps the trace on the browser console, oldest event first.
+     */
+    protected void dumpTrace() {
+        browser.println("Trace: " + trace.size() + " events");
+        for (int i = 0; i != trace.size(); i++) {
+            browser.println(trace.format(i));
+        }
+    }
+
     /*** SAI-specific helpers *************************************************/
 
+    /**
+     * Commits all pending field writes to the browser as a single update.
+     */
+    protected void commitUpdates() {
+        int writes = updates.flush(browser);
+        if (writes != 0) {
+            trace.record(Trace.FLUSH, writes, 0);
+            metrics.fieldsWritten(writes);
+        }
+        if (clickTime != 0) {
+            metrics.clickHandled(System.nanoTime() - clickTime);
+            clickTime = 0;
+        }
+    }
+
     /**
      * Displays the specified message on the browser console if the script is
      * running in debug mode according to the value of the "debug" field.
+     * Callers on frequently-executed paths should only build messages when in
+     * debug mode, and record events in the trace instead.
      *
      * @param message the message to display, as a String
      */
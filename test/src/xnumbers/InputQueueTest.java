@@ -0,0 +1,138 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.util.Arrays;
+
+/**
+ * <p>Tests of {@link InputQueue}: which clicks are collapsed, and which are
+ * processed.</p>
+ *
+ * <p>Run {@link #main(String[])} with the XNumbers classes on the classpath;
+ * a failing test throws an AssertionError.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class InputQueueTest {
+
+    /**
+     * Runs all tests.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        repeatedStartCountsOnce();
+        repeatedUndoCountsEveryClick();
+        immovableTilesAreDropped();
+        System.out.println("InputQueueTest: all tests passed.");
+    }
+
+    /**
+     * Two Start clicks in a cascade start a single game rather than starting
+     * and aborting it.
+     */
+    static void repeatedStartCountsOnce() {
+        Game game = newGame();
+        InputQueue inputs = new InputQueue(game, InputQueue.DEFAULT_CAPACITY, InputQueue.OverflowPolicy.REJECT);
+        inputs.offer(Game.BUTTON_MAIN);
+        inputs.offer(Game.BUTTON_MAIN);
+        inputs.drain();
+        check(game.getState() == Game.STATE_PLAYING, "game not playing after two Start clicks");
+    }
+
+    /**
+     * Two Undo clicks in a cascade undo two moves.
+     */
+    static void repeatedUndoCountsEveryClick() {
+        Game game = newGame();
+        game.process(Game.BUTTON_MAIN);
+        int[] before = null;
+        for (int i = 0; i != 6; i++) {
+            if (i == 4) {
+                before = game.getBoard().toArray(null);
+            }
+            game.process(movableTile(game));
+        }
+        int steps = game.getSteps();
+        InputQueue inputs = new InputQueue(game, InputQueue.DEFAULT_CAPACITY, InputQueue.OverflowPolicy.REJECT);
+        inputs.offer(Game.BUTTON_UNDO);
+        inputs.offer(Game.BUTTON_UNDO);
+        inputs.drain();
+        check(game.getSteps() == steps - 2, "steps " + game.getSteps() + " after two undos from " + steps);
+        check(Arrays.equals(game.getBoard().toArray(null), before), "board not as before the last two moves");
+    }
+
+    /**
+     * Clicks on tiles that cannot move are not processed.
+     */
+    static void immovableTilesAreDropped() {
+        Game game = newGame();
+        game.process(Game.BUTTON_MAIN);
+        int steps = game.getSteps();
+        InputQueue inputs = new InputQueue(game, InputQueue.DEFAULT_CAPACITY, InputQueue.OverflowPolicy.REJECT);
+        for (int tile = 0; tile != 9; tile++) {
+            if (tile != game.getBoard().getMissingTileIndex() && !game.getBoard().canMove(tile)) {
+                inputs.offer(tile);
+            }
+        }
+        inputs.drain();
+        check(game.getSteps() == steps, "immovable tile moved");
+    }
+
+    /**
+     * Creates a 3x3 game with a fixed seed.
+     *
+     * @return the game, as a Game
+     */
+    private static Game newGame() {
+        Game game = new Game(3, 3);
+        game.setRandom(new RandomSource(1));
+        return game;
+    }
+
+    /**
+     * Returns a tile of the specified game that can be moved.
+     *
+     * @param game the game
+     *
+     * @return the tile index, as an int
+     */
+    private static int movableTile(Game game) {
+        Board board = game.getBoard();
+        for (int tile = 0; ; tile++) {
+            if (tile != board.getMissingTileIndex() && board.canMove(tile)) {
+                return tile;
+            }
+        }
+    }
+
+    /**
+     * Fails with the specified message unless the specified condition holds.
+     *
+     * @param condition the condition
+     * @param message the message
+     */
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
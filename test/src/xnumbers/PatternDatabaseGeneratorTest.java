@@ -0,0 +1,152 @@
+package xnumbers;
+
+/**
+ * Copyright (c) 2010-2015 by George Anastassakis
+ *
+ * This file is part of XNumbers.
+ *
+ * XNumbers is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * XNumbers is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with XNumbers. If not, see http://www.gnu.org/licenses/.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Tests of {@link PatternDatabaseGenerator}: generated databases must be
+ * admissible, i.e. estimate 0 at the goal and never more than the actual
+ * distance, whether the free cell is tracked or not.</p>
+ *
+ * <p>Run {@link #main(String[])} with the XNumbers classes on the classpath;
+ * a failing test throws an AssertionError.</p>
+ *
+ * @author George Anastassakis
+ * @version 1.0
+ */
+public class PatternDatabaseGeneratorTest {
+
+    /**
+     * The board's width and height.
+     */
+    private static final int SIDE = 3;
+
+    /**
+     * The missing tile index.
+     */
+    private static final int MISSING = SIDE * SIDE - 1;
+
+    /**
+     * Runs all tests.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        Map<Long, Integer> distances = distances();
+        int[][] single = {{0, 1, 2, 3, 4, 5, 6, 7}};
+        int[][] split = {{0, 1, 2, 3}, {4, 5, 6, 7}};
+        admissible(single, true, distances);
+        admissible(single, false, distances);
+        admissible(split, true, distances);
+        admissible(split, false, distances);
+        System.out.println("PatternDatabaseGeneratorTest: all tests passed.");
+    }
+
+    /**
+     * Checks that the sum of the databases generated for the specified
+     * disjoint patterns estimates 0 at the goal and never exceeds the
+     * distance of any solvable board.
+     *
+     * @param patterns the patterns
+     * @param trackRegions whether the free cell is tracked
+     * @param distances the distance of every solvable board, by key
+     */
+    static void admissible(int[][] patterns, boolean trackRegions, Map<Long, Integer> distances) {
+        PatternDatabase[] databases = new PatternDatabase[patterns.length];
+        for (int i = 0; i != patterns.length; i++) {
+            byte[] entries = new PatternDatabaseGenerator(SIDE, SIDE, MISSING, patterns[i], trackRegions).generate();
+            databases[i] = new PatternDatabase(SIDE, SIDE, MISSING, patterns[i], ByteBuffer.wrap(entries));
+        }
+        String name = patterns.length + " pattern(s), tracking " + (trackRegions ? "on" : "off");
+        int[] positions = new int[SIDE * SIDE];
+        for (Map.Entry<Long, Integer> e : distances.entrySet()) {
+            long key = e.getKey().longValue();
+            for (int cell = 0; cell != positions.length; cell++) {
+                positions[(int) (key >>> (cell * 4)) & 0x0F] = cell;
+            }
+            int estimate = 0;
+            for (int i = 0; i != databases.length; i++) {
+                estimate += databases[i].estimate(positions);
+            }
+            int distance = e.getValue().intValue();
+            check(estimate <= distance, name + ": estimate " + estimate + " exceeds distance " + distance);
+            check(distance != 0 || estimate == 0, name + ": estimate " + estimate + " at the goal");
+        }
+    }
+
+    /**
+     * Computes the distance of every solvable board by breadth-first search
+     * from the goal. Boards are keyed by the tile at each cell, four bits per
+     * cell.
+     *
+     * @return the distances, by key
+     */
+    static Map<Long, Integer> distances() {
+        int size = SIDE * SIDE;
+        int[] neighbours = Board.neighbours(SIDE, SIDE);
+        Map<Long, Integer> distances = new HashMap<Long, Integer>();
+        long[] queue = new long[181440];
+        long goal = 0;
+        for (int cell = 0; cell != size; cell++) {
+            goal |= (long) cell << (cell * 4);
+        }
+        distances.put(Long.valueOf(goal), Integer.valueOf(0));
+        queue[0] = goal;
+        int tail = 1;
+        for (int head = 0; head != tail; head++) {
+            long key = queue[head];
+            int distance = distances.get(Long.valueOf(key)).intValue();
+            int free = 0;
+            while (((key >>> (free * 4)) & 0x0F) != MISSING) {
+                free++;
+            }
+            for (int d = 0; d != 4; d++) {
+                int cell = neighbours[free * 4 + d];
+                if (cell == -1) {
+                    continue;
+                }
+                long tile = (key >>> (cell * 4)) & 0x0F;
+                long next = key & ~(0x0FL << (cell * 4)) & ~(0x0FL << (free * 4));
+                next |= (long) MISSING << (cell * 4) | tile << (free * 4);
+                if (!distances.containsKey(Long.valueOf(next))) {
+                    distances.put(Long.valueOf(next), Integer.valueOf(distance + 1));
+                    queue[tail++] = next;
+                }
+            }
+        }
+        check(tail == queue.length, "reached " + tail + " boards");
+        return distances;
+    }
+
+    /**
+     * Fails with the specified message unless the specified condition holds.
+     *
+     * @param condition the condition
+     * @param message the message
+     */
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}